@@ -0,0 +1,55 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package communication;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a stream written by a CompactObjectOutputStream
+ *
+ */
+class CompactObjectInputStream extends ObjectInputStream {
+	private final List<ObjectStreamClass> descriptors = new ArrayList<ObjectStreamClass>();
+
+	CompactObjectInputStream(InputStream in) throws IOException {
+		super(in);
+	}
+
+	@Override
+	protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+		int number = readInt();
+		if (number == 0) {
+			ObjectStreamClass desc = super.readClassDescriptor();
+			descriptors.add(desc);
+			return desc;
+		} else if (number > descriptors.size()) {
+			throw new StreamCorruptedException("Unknown class descriptor: " + number);
+		}
+		return descriptors.get(number - 1);
+	}
+}
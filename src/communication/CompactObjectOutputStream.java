@@ -0,0 +1,57 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package communication;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ObjectOutputStream that writes each class descriptor only once per
+ * stream: later occurrences (e.g. after a reset(), which makes java
+ * serialization write the descriptors again) are written as a reference
+ * to the first one. Read by CompactObjectInputStream.
+ *
+ */
+class CompactObjectOutputStream extends ObjectOutputStream {
+	// descriptors already written (0: new descriptor follows; n>0: descriptor number n-1)
+	private final Map<String, Integer> descriptors = new HashMap<String, Integer>();
+
+	CompactObjectOutputStream(OutputStream out) throws IOException {
+		super(out);
+	}
+
+	@Override
+	protected void writeClassDescriptor(ObjectStreamClass desc) throws IOException {
+		Integer number = descriptors.get(desc.getName());
+		if (number != null) {
+			writeInt(number + 1);
+		} else {
+			descriptors.put(desc.getName(), descriptors.size());
+			writeInt(0);
+			super.writeClassDescriptor(desc);
+		}
+	}
+}
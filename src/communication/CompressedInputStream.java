@@ -0,0 +1,147 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package communication;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a stream written by a CompressedOutputStream (once its MAGIC byte
+ * has been read). Blocks are read (and decompressed) one at a time, when
+ * the bytes of the previous one have been consumed.
+ *
+ */
+public class CompressedInputStream extends InputStream {
+	private static final int MAX_BLOCK_LENGTH = 64 * 1024 * 1024;
+
+	private final DataInputStream in;
+	private final Inflater inflater = new Inflater();
+
+	private byte[] block = new byte[8192];
+	private byte[] buffer = new byte[8192];
+	private int position = 0;
+	private int count = 0;
+
+	// statistics: time spent decompressing (nanoseconds)
+	private long nanos = 0;
+
+	public CompressedInputStream(InputStream in) {
+		this.in = new DataInputStream(in);
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (position == count && !nextBlock()) {
+			return -1;
+		}
+		return buffer[position++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (position == count && !nextBlock()) {
+			return -1;
+		}
+		int n = Math.min(len, count - position);
+		System.arraycopy(buffer, position, b, off, n);
+		position += n;
+		return n;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return count - position;
+	}
+
+	/**
+	 * reads the next (non empty) block
+	 * @return false at the end of the stream
+	 */
+	private boolean nextBlock() throws IOException {
+		do {
+			int type = in.read();
+			if (type < 0) {
+				return false;
+			}
+			int length = in.readInt();
+			if (length < 0 || length > MAX_BLOCK_LENGTH) {
+				throw new StreamCorruptedException("Invalid block length: " + length);
+			}
+			if (length > block.length) {
+				block = new byte[Math.max(length, block.length * 2)];
+			}
+			in.readFully(block, 0, length);
+			position = 0;
+			if (type == CompressedOutputStream.RAW) {
+				ensureCapacity(length);
+				System.arraycopy(block, 0, buffer, 0, length);
+				count = length;
+			} else if (type == CompressedOutputStream.DEFLATED) {
+				inflate(length);
+			} else {
+				throw new StreamCorruptedException("Unknown block type: " + type);
+			}
+		} while (count == 0);
+		return true;
+	}
+
+	private void inflate(int length) throws IOException {
+		long start = System.nanoTime();
+		inflater.setInput(block, 0, length);
+		count = 0;
+		try {
+			while (!inflater.needsInput()) {
+				if (count == buffer.length) {
+					ensureCapacity(buffer.length * 2);
+				}
+				count += inflater.inflate(buffer, count, buffer.length - count);
+			}
+		} catch (DataFormatException e) {
+			throw new StreamCorruptedException("Invalid compressed block: " + e.getMessage());
+		}
+		nanos += System.nanoTime() - start;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > buffer.length) {
+			buffer = Arrays.copyOf(buffer, capacity);
+		}
+	}
+
+	public long getNanos() {
+		return nanos;
+	}
+
+	@Override
+	public void close() throws IOException {
+		inflater.end();
+		in.close();
+	}
+}
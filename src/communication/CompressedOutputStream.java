@@ -0,0 +1,152 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package communication;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Compression layer beneath the streams of TSAE sessions. The stream
+ * starts with MAGIC; then, each time it is flushed (once per message),
+ * the bytes written since the previous flush are sent as a block:
+ * 	- blocks smaller than threshold bytes (control messages) are sent
+ * 	  as they are (RAW)
+ * 	- larger blocks are compressed with a Deflater shared by all the
+ * 	  blocks of the stream and flushed with SYNC_FLUSH (DEFLATED), so
+ * 	  each block can be decompressed as soon as it is received and
+ * 	  repeated content (e.g. recipes of previous messages) is found in
+ * 	  the dictionary
+ * Block: type (1 byte), length (4 bytes), data. See CompressedInputStream.
+ *
+ */
+public class CompressedOutputStream extends OutputStream {
+	public static final int MAGIC = 0xC1;
+	static final int RAW = 0;
+	static final int DEFLATED = 1;
+
+	private final DataOutputStream out;
+	private final int threshold;
+	private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+	private byte[] buffer = new byte[8192];
+	private int count = 0;
+	private byte[] compressed = new byte[8192];
+
+	// statistics: bytes written to this stream and to the underlying one,
+	// and time spent compressing (nanoseconds)
+	private long rawBytes = 0;
+	private long wireBytes = 0;
+	private long nanos = 0;
+
+	/**
+	 * @param out
+	 * @param threshold minimum size (bytes) of a block to be compressed
+	 * @throws IOException
+	 */
+	public CompressedOutputStream(OutputStream out, int threshold) throws IOException {
+		this.out = new DataOutputStream(out);
+		this.threshold = threshold;
+		this.out.write(MAGIC);
+		this.out.flush();
+		wireBytes++;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ensureCapacity(count + 1);
+		buffer[count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureCapacity(count + len);
+		System.arraycopy(b, off, buffer, count, len);
+		count += len;
+	}
+
+	/**
+	 * sends the bytes written since the last flush as a block
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (count == 0) {
+			out.flush();
+			return;
+		}
+		rawBytes += count;
+		if (count < threshold) {
+			writeBlock(RAW, buffer, count);
+		} else {
+			long start = System.nanoTime();
+			deflater.setInput(buffer, 0, count);
+			int length = 0;
+			int n;
+			do {
+				if (length == compressed.length) {
+					compressed = Arrays.copyOf(compressed, compressed.length * 2);
+				}
+				n = deflater.deflate(compressed, length, compressed.length - length, Deflater.SYNC_FLUSH);
+				length += n;
+			} while (length == compressed.length);
+			nanos += System.nanoTime() - start;
+			writeBlock(DEFLATED, compressed, length);
+		}
+		count = 0;
+		out.flush();
+	}
+
+	private void writeBlock(int type, byte[] data, int length) throws IOException {
+		out.write(type);
+		out.writeInt(length);
+		out.write(data, 0, length);
+		wireBytes += 5 + length;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+		}
+	}
+
+	public long getRawBytes() {
+		return rawBytes;
+	}
+	public long getWireBytes() {
+		return wireBytes;
+	}
+	public long getNanos() {
+		return nanos;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			deflater.end();
+			out.close();
+		}
+	}
+}
@@ -22,9 +22,13 @@ package communication;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.BufferedInputStream;
+import java.io.EOFException;
 import java.io.ObjectInputStream;
+import java.io.PushbackInputStream;
 
 import recipes_service.activity_simulation.SimulationData;
+import recipes_service.communication.BinaryCodec;
 
 
 /**
@@ -36,16 +40,81 @@ import recipes_service.activity_simulation.SimulationData;
  */
 public class ObjectInputStream_DS {
 	private ObjectInputStream in;
+
+	// underlying stream, and the one below the object stream (used to
+	// know if there is data that has not been read yet)
+	private InputStream rawIn;
+	private PushbackInputStream sourceIn;
+
+	// binary format (see BinaryCodec)
+	private InputStream binaryIn;
+	private BinaryCodec codec;
+
+	// compression layer (see CompressedInputStream); null if not compressed
+	private CompressedInputStream compressed;
 	
+	/**
+	 * the format (java serialization, in streaming mode or not, or binary)
+	 * and whether the stream is compressed are detected from the first byte
+	 * of the stream
+	 */
 	public ObjectInputStream_DS(InputStream inStream) throws IOException{
-		in = new ObjectInputStream(inStream);
+		rawIn = inStream;
+		PushbackInputStream pushbackIn = new PushbackInputStream(inStream);
+		int first = pushbackIn.read();
+		if (first == CompressedOutputStream.MAGIC){
+			compressed = new CompressedInputStream(pushbackIn);
+			pushbackIn = new PushbackInputStream(compressed);
+			first = pushbackIn.read();
+		}
+		if (first < 0){
+			throw new EOFException();
+		} else if (first == BinaryCodec.MAGIC){
+			binaryIn = new BufferedInputStream(pushbackIn);
+			codec = new BinaryCodec();
+		} else if (first == ObjectOutputStream_DS.STREAMING_MAGIC){
+			in = new CompactObjectInputStream(pushbackIn);
+		} else {
+			pushbackIn.unread(first);
+			in = new ObjectInputStream(pushbackIn);
+		}
+		sourceIn = pushbackIn;
+	}
+
+	/**
+	 * @return true if there is data that has not been read yet, either
+	 *         buffered by this stream (or its decompression layer) or
+	 *         still in the underlying stream
+	 * @throws IOException
+	 */
+	public boolean hasUnreadData() throws IOException{
+		int buffered = (codec != null) ? binaryIn.available() : in.available() + sourceIn.available();
+		return buffered > 0 || rawIn.available() > 0;
+	}
+
+	public boolean isCompressed(){
+		return compressed != null;
+	}
+
+	/**
+	 * @return time spent decompressing (nanoseconds)
+	 */
+	public long getDecompressionNanos(){
+		return (compressed == null) ? 0 : compressed.getNanos();
 	}
 
 	public Object readObject() throws IOException, ClassNotFoundException{
 		if (SimulationData.getInstance().isConnected()){
+			if (codec != null){
+				return codec.readFrame(binaryIn);
+			}
 			return in.readObject();
 		}
-		in.close();
+		if (codec != null){
+			binaryIn.close();
+		} else {
+			in.close();
+		}
 		throw new IOException("Trying to read from a closed ObjectInputStream_DS");
 	}
 }
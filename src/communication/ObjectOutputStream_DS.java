@@ -20,11 +20,14 @@
 
 package communication;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 
 import recipes_service.activity_simulation.SimulationData;
+import recipes_service.communication.BinaryCodec;
+import recipes_service.communication.WireFormat;
 
 
 /**
@@ -35,18 +38,202 @@ import recipes_service.activity_simulation.SimulationData;
  *
  */
 public class ObjectOutputStream_DS {
+	// first byte of a java serialization stream in streaming mode
+	public static final int STREAMING_MAGIC = 0xC2;
+
 	private ObjectOutputStream out;
+
+	// streaming mode: the stream is reset every resetObjects objects or
+	// resetBytes bytes, so the objects written are not kept reachable (by
+	// the handle table of java serialization) for the lifetime of the
+	// stream. Class descriptors are written once (see CompactObjectOutputStream)
+	private CountingOutputStream counter;
+	private int resetObjects;
+	private long resetBytes;
+	private int objectsSinceReset = 0;
+	private long bytesAtReset = 0;
+	private long resets = 0;
+	private long peakRetainedBytes = 0;
+
+	// binary format (see BinaryCodec)
+	private OutputStream binaryOut;
+	private BinaryCodec codec;
+
+	// compression layer (see CompressedOutputStream); null if not compressed
+	private CompressedOutputStream compressed;
 	
+	/**
+	 * the stream is compressed if compression is enabled (the other side
+	 * detects it from the first byte of the stream)
+	 */
 	public ObjectOutputStream_DS(OutputStream outStream) throws IOException{
-		this.out = new ObjectOutputStream(outStream);
+		this(outStream, SimulationData.getInstance().compression());
+	}
+
+	/**
+	 * @param outStream
+	 * @param compress true to compress the stream
+	 * @throws IOException
+	 */
+	public ObjectOutputStream_DS(OutputStream outStream, boolean compress) throws IOException{
+		if (compress){
+			compressed = new CompressedOutputStream(outStream, SimulationData.getInstance().compressionThreshold());
+			outStream = compressed;
+		}
+		if (SimulationData.getInstance().wireFormat() == WireFormat.BINARY){
+			this.binaryOut = outStream;
+			this.codec = new BinaryCodec();
+			BinaryCodec.writeHeader(outStream);
+		} else if (SimulationData.getInstance().streamingMode()){
+			outStream.write(STREAMING_MAGIC);
+			this.counter = new CountingOutputStream(outStream);
+			this.out = new CompactObjectOutputStream(counter);
+			this.resetObjects = SimulationData.getInstance().streamResetObjects();
+			this.resetBytes = SimulationData.getInstance().streamResetBytes();
+			if (compressed != null){
+				out.flush();
+			}
+		} else {
+			this.out = new ObjectOutputStream(outStream);
+			if (compressed != null){
+				// the header can not wait in the buffer: the other side reads it before writing
+				out.flush();
+			}
+		}
 	}
 
 	public void writeObject(Object obj) throws IOException{
 		if (SimulationData.getInstance().isConnected()){
-			out.writeObject(obj);
+			if (codec != null){
+				codec.writeFrame(binaryOut, obj);
+			} else {
+				out.writeObject(obj);
+				if (counter != null){
+					objectsSinceReset++;
+					if ((resetObjects > 0 && objectsSinceReset >= resetObjects)
+							|| (resetBytes > 0 && counter.getCount() - bytesAtReset >= resetBytes)){
+						reset();
+					}
+				}
+				if (compressed != null){
+					// one compressed block per message
+					out.flush();
+				}
+			}
 		} else {
-			out.close();
+			close();
 			throw new IOException("Trying to write into a closed ObjectOutputStream_DS");
 		}
 	}
+
+	/**
+	 * Forgets the objects already written (java serialization keeps a
+	 * reference to each of them while the stream is open). To be called
+	 * between sessions when the stream is reused.
+	 * @throws IOException
+	 */
+	public void reset() throws IOException{
+		if (out != null){
+			out.reset();
+		}
+		if (counter != null){
+			peakRetainedBytes = Math.max(peakRetainedBytes, getRetainedBytes());
+			objectsSinceReset = 0;
+			bytesAtReset = counter.getCount();
+			resets++;
+		}
+	}
+
+	public boolean isStreaming(){
+		return counter != null;
+	}
+
+	/**
+	 * @return number of resets (0 if not in streaming mode)
+	 */
+	public long getResets(){
+		return resets;
+	}
+
+	/**
+	 * @return objects written since the last reset (0 if not in streaming mode)
+	 */
+	public int getRetainedObjects(){
+		return objectsSinceReset;
+	}
+
+	/**
+	 * @return bytes written since the last reset: an estimation of the memory
+	 *         kept by the handle table of the stream (0 if not in streaming mode)
+	 */
+	public long getRetainedBytes(){
+		return (counter == null) ? 0 : counter.getCount() - bytesAtReset;
+	}
+
+	/**
+	 * @return maximum of getRetainedBytes() since the stream was created
+	 */
+	public long getPeakRetainedBytes(){
+		return Math.max(peakRetainedBytes, getRetainedBytes());
+	}
+
+	public boolean isCompressed(){
+		return compressed != null;
+	}
+
+	/**
+	 * @return bytes written before compression (0 if not compressed)
+	 */
+	public long getRawBytes(){
+		return (compressed == null) ? 0 : compressed.getRawBytes();
+	}
+
+	/**
+	 * @return bytes written to the underlying stream (0 if not compressed)
+	 */
+	public long getWireBytes(){
+		return (compressed == null) ? 0 : compressed.getWireBytes();
+	}
+
+	/**
+	 * @return time spent compressing (nanoseconds)
+	 */
+	public long getCompressionNanos(){
+		return (compressed == null) ? 0 : compressed.getNanos();
+	}
+
+	private void close() throws IOException{
+		if (codec != null){
+			binaryOut.close();
+		} else {
+			out.close();
+		}
+	}
+
+	/**
+	 * counts the bytes written to the stream
+	 */
+	private static class CountingOutputStream extends FilterOutputStream {
+		private long count = 0;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+
+		long getCount() {
+			return count;
+		}
+	}
 }
@@ -80,6 +80,37 @@ public class CoordinatorInitHandler implements Handler {
 					lsim.addInitParam(instance_name,"purge",params.get("purge"));
 					lsim.addInitParam(instance_name,"executionMode",params.get("executionMode"));
 					lsim.addInitParam(instance_name,"phase",params.get("phase"));
+					lsim.addInitParam(instance_name,"dataDir",params.get("dataDir"));
+					lsim.addInitParam(instance_name,"segmentSize",params.get("segmentSize"));
+					lsim.addInitParam(instance_name,"deltaSummaries",params.get("deltaSummaries"));
+					lsim.addInitParam(instance_name,"wireFormat",params.get("wireFormat"));
+					lsim.addInitParam(instance_name,"compression",params.get("compression"));
+					lsim.addInitParam(instance_name,"compressionThreshold",params.get("compressionThreshold"));
+					lsim.addInitParam(instance_name,"streamingMode",params.get("streamingMode"));
+					lsim.addInitParam(instance_name,"streamResetObjects",params.get("streamResetObjects"));
+					lsim.addInitParam(instance_name,"streamResetBytes",params.get("streamResetBytes"));
+					lsim.addInitParam(instance_name,"batchSize",params.get("batchSize"));
+					lsim.addInitParam(instance_name,"propagationMaxDelay",params.get("propagationMaxDelay"));
+					lsim.addInitParam(instance_name,"propagationMaxBatch",params.get("propagationMaxBatch"));
+					lsim.addInitParam(instance_name,"maxParallelSessions",params.get("maxParallelSessions"));
+					lsim.addInitParam(instance_name,"sessionTimeout",params.get("sessionTimeout"));
+					lsim.addInitParam(instance_name,"adaptiveSessionPeriod",params.get("adaptiveSessionPeriod"));
+					lsim.addInitParam(instance_name,"sessionPeriodMin",params.get("sessionPeriodMin"));
+					lsim.addInitParam(instance_name,"sessionPeriodMax",params.get("sessionPeriodMax"));
+					lsim.addInitParam(instance_name,"snapshotTransfer",params.get("snapshotTransfer"));
+					lsim.addInitParam(instance_name,"snapshotThreshold",params.get("snapshotThreshold"));
+					lsim.addInitParam(instance_name,"merkleReconciliation",params.get("merkleReconciliation"));
+					lsim.addInitParam(instance_name,"rumorFanout",params.get("rumorFanout"));
+					lsim.addInitParam(instance_name,"rumorTtl",params.get("rumorTtl"));
+					lsim.addInitParam(instance_name,"holdbackSize",params.get("holdbackSize"));
+					lsim.addInitParam(instance_name,"applyLanes",params.get("applyLanes"));
+					lsim.addInitParam(instance_name,"partnerSelection",params.get("partnerSelection"));
+					lsim.addInitParam(instance_name,"digestPrecheck",params.get("digestPrecheck"));
+					lsim.addInitParam(instance_name,"connectionPool",params.get("connectionPool"));
+					lsim.addInitParam(instance_name,"connectionIdleTimeout",params.get("connectionIdleTimeout"));
+					lsim.addInitParam(instance_name,"sessionThreads",params.get("sessionThreads"));
+					lsim.addInitParam(instance_name,"partnerSide",params.get("partnerSide"));
+					lsim.addInitParam(instance_name,"maxPartnerConnections",params.get("maxPartnerConnections"));
 				
 				}
 			}
@@ -36,6 +36,8 @@ import recipes_service.ServerData;
 import recipes_service.ServerPartnerSide;
 import recipes_service.activity_simulation.SimulationData;
 import recipes_service.communication.Host;
+import recipes_service.communication.WireFormat;
+import recipes_service.tsae.sessions.PartnerSelection;
 import util.Serializer;
 
 /**
@@ -107,6 +109,99 @@ public class WorkerInitHandler implements Handler {
 		// * false: Servers running in different computers (or more than one Server in a single computer but
 		// 			this computer having the same internal and external IP address)
 		SimulationData.getInstance().setLocalExecution(((String)params.get("executionMode")).equals("localMode"));
+
+		// param 14: (optional) folder where TSAE data structures are persisted. No persistence if not set
+		serverData.setDataDir(optionalParam(params, "dataDir", null));
+		serverData.setSegmentSize(Integer.parseInt(optionalParam(params, "segmentSize", "1024"))*1024);
+
+		// param 15: (optional) "Off" to always send the full summary and ack in TSAE sessions
+		serverData.setDeltaSummaries(!optionalParam(params, "deltaSummaries", "On").equalsIgnoreCase("Off"));
+
+		// param 16: (optional) "binary" to write the messages of TSAE sessions with BinaryCodec
+		// default value: java (java serialization)
+		SimulationData.getInstance().setWireFormat(optionalParam(params, "wireFormat", "java").equalsIgnoreCase("binary") ?
+				WireFormat.BINARY : WireFormat.JAVA);
+
+		// param 17: (optional) "On" to compress the streams of TSAE sessions (only messages of at least
+		// compressionThreshold bytes are compressed). Default value: Off
+		SimulationData.getInstance().setCompression(optionalParam(params, "compression", "Off").equalsIgnoreCase("On"));
+		SimulationData.getInstance().setCompressionThreshold(Integer.parseInt(optionalParam(params, "compressionThreshold", "256")));
+
+		// param 18: (optional) "On" to reset java serialization streams of TSAE sessions every streamResetObjects
+		// messages or streamResetBytes bytes (0: no limit) and to write class descriptors once. Default value: Off
+		SimulationData.getInstance().setStreamingMode(optionalParam(params, "streamingMode", "Off").equalsIgnoreCase("On"));
+		SimulationData.getInstance().setStreamResetObjects(Integer.parseInt(optionalParam(params, "streamResetObjects", "256")));
+		SimulationData.getInstance().setStreamResetBytes(Long.parseLong(optionalParam(params, "streamResetBytes", "1048576")));
+
+		// param 19: (optional) maximum number of operations sent in a single message of a TSAE session
+		serverData.setBatchSize(Integer.parseInt(optionalParam(params, "batchSize", "64")));
+
+		// param 20: (optional) local writes are propagated (propDegree TSAE sessions) once
+		// propagationMaxBatch writes are pending or propagationMaxDelay milliseconds after the first one
+		serverData.setPropagationMaxDelay(Long.parseLong(optionalParam(params, "propagationMaxDelay", "50")));
+		serverData.setPropagationMaxBatch(Integer.parseInt(optionalParam(params, "propagationMaxBatch", "16")));
+
+		// param 21: (optional) maximum number of TSAE sessions started by this server running
+		// at the same time, and maximum duration of each one (milliseconds)
+		serverData.setMaxParallelSessions(Integer.parseInt(optionalParam(params, "maxParallelSessions", "4")));
+		serverData.setSessionTimeout(Long.parseLong(optionalParam(params, "sessionTimeout", "10000")));
+
+		// param 22: (optional) "On" to adapt the period between TSAE sessions to the operations transferred,
+		// between sessionPeriodMin and sessionPeriodMax seconds. Default values: Off, 1 and 60
+		serverData.setAdaptiveSessionPeriod(optionalParam(params, "adaptiveSessionPeriod", "Off").equalsIgnoreCase("On"));
+		serverData.setSessionPeriodMin(Long.parseLong(optionalParam(params, "sessionPeriodMin", "1"))*1000);
+		serverData.setSessionPeriodMax(Long.parseLong(optionalParam(params, "sessionPeriodMax", "60"))*1000);
+
+		// param 23: (optional) "Off" to always send operations to partners that are far behind (instead of a
+		// snapshot of the state) and minimum number of missing operations to send a snapshot. Default values: On and 1000
+		serverData.setSnapshotTransfer(!optionalParam(params, "snapshotTransfer", "On").equalsIgnoreCase("Off"));
+		serverData.setSnapshotThreshold(Long.parseLong(optionalParam(params, "snapshotThreshold", "1000")));
+
+		// param 24: (optional) "Off" to disable the Merkle reconciliation of recipes when the logs can not bring
+		// both servers of a TSAE session up to date. Default value: On
+		serverData.setMerkleReconciliation(!optionalParam(params, "merkleReconciliation", "On").equalsIgnoreCase("Off"));
+
+		// param 25: (optional) number of partners each new operation is pushed to (rumor mongering) and
+		// maximum number of hops. Default values: 0 (no rumors) and 3
+		serverData.setRumorFanout(Integer.parseInt(optionalParam(params, "rumorFanout", "0")));
+		serverData.setRumorTtl(Integer.parseInt(optionalParam(params, "rumorTtl", "3")));
+
+		// param 26: (optional) maximum number of operations received before the ones preceding them
+		// that are kept until the gap is filled (see HoldbackBuffer). Default value: 10000
+		serverData.setHoldbackSize(Integer.parseInt(optionalParam(params, "holdbackSize", "10000")));
+
+		// param 27: (optional) maximum number of hosts whose received operations are inserted into the log
+		// in parallel (see ApplyLanes). 0: number of processors. Default value: 1 (no parallelism)
+		serverData.setApplyLanes(Integer.parseInt(optionalParam(params, "applyLanes", "1")));
+
+		// param 28: (optional) strategy to choose the partners of TSAE sessions: "uniform", "divergence"
+		// or "roundrobin". Default value: uniform
+		String partnerSelection = optionalParam(params, "partnerSelection", "uniform");
+		if (partnerSelection.equalsIgnoreCase("divergence")){
+			serverData.setPartnerSelection(PartnerSelection.DIVERGENCE);
+		} else if (partnerSelection.equalsIgnoreCase("roundrobin")){
+			serverData.setPartnerSelection(PartnerSelection.ROUND_ROBIN);
+		} else {
+			serverData.setPartnerSelection(PartnerSelection.UNIFORM);
+		}
+
+		// param 29: (optional) "Off" to always exchange summaries and acks in TSAE sessions. Default value: On
+		// (sessions start exchanging a digest of summary and ack and end if both are equal)
+		serverData.setDigestPrecheck(!optionalParam(params, "digestPrecheck", "On").equalsIgnoreCase("Off"));
+
+		// param 30: (optional) "Off" to use a new connection for each TSAE session. Default value: On
+		// (connections to partners are kept open and closed after connectionIdleTimeout milliseconds idle)
+		serverData.setConnectionPool(!optionalParam(params, "connectionPool", "On").equalsIgnoreCase("Off"));
+		serverData.setConnectionIdleTimeout(Long.parseLong(optionalParam(params, "connectionIdleTimeout", "30000")));
+
+		// param 31: (optional) "virtual" to run each TSAE session in a virtual thread
+		// default value: platform (pool of platform threads)
+		serverData.setVirtualThreads(optionalParam(params, "sessionThreads", "platform").equalsIgnoreCase("virtual"));
+
+		// param 32: (optional) "nio" to serve all TSAE sessions from partners in a single thread
+		// (requires wireFormat=binary). Default value: threads (a thread per session)
+		serverData.setNioPartnerSide(optionalParam(params, "partnerSide", "threads").equalsIgnoreCase("nio"));
+		serverData.setMaxPartnerConnections(Integer.parseInt(optionalParam(params, "maxPartnerConnections", "64")));
 		
 		
 		//         this computer having the same internal and external IP address) 
@@ -166,6 +261,18 @@ public class WorkerInitHandler implements Handler {
 	/*
 	 * Auxiliary methods
 	 */
+
+	/**
+	 * @return value of an optional parameter, or defaultValue if it has not been set
+	 */
+	private static String optionalParam(LSimParameters params, String name, String defaultValue){
+		String value = (String) params.get(name);
+		if (value == null || value.trim().isEmpty()){
+			return defaultValue;
+		}
+		return value.trim();
+	}
+
 	private String getHostAddress(){
 		Socket socket = null;
         ObjectInputStream in = null;
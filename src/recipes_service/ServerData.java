@@ -20,11 +20,22 @@
 
 package recipes_service;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.Vector;
+import java.util.concurrent.Callable;
 
 import edu.uoc.dpcs.lsim.LSimFactory;
+import edu.uoc.dpcs.lsim.logger.LoggerManager.Level;
 import lsim.worker.LSimWorker;
 import recipes_service.activity_simulation.SimulationData;
 import recipes_service.communication.Host;
@@ -33,10 +44,26 @@ import recipes_service.data.AddOperation;
 import recipes_service.data.Operation;
 import recipes_service.data.Recipe;
 import recipes_service.data.Recipes;
+import recipes_service.data.RecipesMerkleTree;
+import recipes_service.data.RemoveOperation;
+import recipes_service.tsae.data_structures.ApplyLanes;
+import recipes_service.tsae.data_structures.HoldbackBuffer;
 import recipes_service.tsae.data_structures.Log;
+import recipes_service.tsae.data_structures.LogPurger;
 import recipes_service.tsae.data_structures.Timestamp;
 import recipes_service.tsae.data_structures.TimestampMatrix;
 import recipes_service.tsae.data_structures.TimestampVector;
+import recipes_service.tsae.persistence.PersistentLogStore;
+import recipes_service.tsae.persistence.ServerState;
+import recipes_service.tsae.sessions.AdaptiveSessionScheduler;
+import recipes_service.tsae.sessions.ConnectionPool;
+import recipes_service.tsae.sessions.PartnerSelection;
+import recipes_service.tsae.sessions.PartnerSelector;
+import recipes_service.tsae.sessions.PropagationScheduler;
+import recipes_service.tsae.sessions.RumorMonger;
+import recipes_service.tsae.sessions.TSAEMetrics;
+import recipes_service.tsae.sessions.SessionExecutor;
+import recipes_service.tsae.sessions.SummaryBaselines;
 import recipes_service.tsae.sessions.TSAESessionOriginatorSide;
 
 /**
@@ -64,6 +91,72 @@ public class ServerData {
 	private Log log = null;
 	private TimestampVector summary = null;
 	private TimestampMatrix ack = null;
+
+	// purges the log in background when the ack is updated
+	private LogPurger logPurger = null;
+
+	// persistent storage of the TSAE data structures (null: only in memory)
+	private String dataDir = null;
+	private int segmentSize = 1024 * 1024;
+	private PersistentLogStore store = null;
+
+	// summaries and acks exchanged with each partner (to send only deltas)
+	private boolean deltaSummaries = true;
+	private SummaryBaselines summaryBaselines = null;
+
+	// maximum number of operations sent in a single message of a TSAE session
+	private int batchSize = 64;
+
+	// partner side: a thread per session (false) or a single NIO selector thread (true)
+	private boolean nioPartnerSide = false;
+	private int maxPartnerConnections = 64;
+
+	// sessions started by this server: maximum number running at the same time
+	// and maximum duration (milliseconds)
+	private int maxParallelSessions = 4;
+	private long sessionTimeout = 10000;
+
+	// propagation of local writes: maximum delay (milliseconds) and maximum batch of writes
+	private long propagationMaxDelay = 50;
+	private int propagationMaxBatch = 16;
+	private PropagationScheduler propagationScheduler = null;
+
+	// connections to partners kept open between sessions
+	private boolean connectionPool = true;
+	private long connectionIdleTimeout = 30000;
+	private ConnectionPool pool = null;
+
+	// sessions start exchanging a digest of summary and ack (and end if both are equal)
+	private boolean digestPrecheck = true;
+	private TSAEMetrics metrics = new TSAEMetrics();
+
+	// strategy to choose the partners of TSAE sessions
+	private PartnerSelection partnerSelection = PartnerSelection.UNIFORM;
+	private PartnerSelector partnerSelector = null;
+
+	// snapshot transfer to partners that miss purged operations or many operations
+	private boolean snapshotTransfer = true;
+	private long snapshotThreshold = 1000;
+
+	// Merkle reconciliation of recipes when a session can not bring both servers up to date
+	private boolean merkleReconciliation = true;
+
+	// operations received before the ones preceding them: maximum number parked
+	private int holdbackSize = 10000;
+	private HoldbackBuffer holdback = null;
+
+	// operations received from partners are inserted into the log with a lane per
+	// host: maximum number of lanes running in parallel (0: number of processors)
+	private int applyLanesSize = 1;
+	private ApplyLanes applyLanes = null;
+
+	// rumor mongering of new local operations: number of partners and maximum number of hops
+	private int rumorFanout = 0;
+	private int rumorTtl = 3;
+	private RumorMonger rumorMonger = null;
+
+	// runs TSAE sessions (originator and partner sides)
+	private SessionExecutor sessionExecutor = SessionExecutor.create(false);
 	
 	// recipes data structure
 	private Recipes recipes = new Recipes();
@@ -83,6 +176,12 @@ public class ServerData {
 
 	private Timer tsaeSessionTimer;
 
+	// adaptive period: between sessionPeriodMin and sessionPeriodMax (see AdaptiveSessionScheduler)
+	private boolean adaptiveSessionPeriod = false;
+	private long sessionPeriodMin = 1000;
+	private long sessionPeriodMax = 60000;
+	private AdaptiveSessionScheduler adaptiveSessionScheduler = null;
+
 	//
 	TSAESessionOriginatorSide tsae = null;
 
@@ -106,16 +205,106 @@ public class ServerData {
 		this.log = new Log(participants.getIds());
 		this.summary = new TimestampVector(participants.getIds());
 		this.ack = new TimestampMatrix(participants.getIds());
+		if (dataDir != null){
+			restoreState(participants.getIds());
+		}
+		this.logPurger = new LogPurger(log, ack);
+		this.holdback = new HoldbackBuffer(holdbackSize);
+		// without a persistent store inserting into the log is an array copy:
+		// lanes would cost more than they save
+		this.applyLanes = new ApplyLanes(log, (store != null) ? applyLanesSize : 1);
+		this.summaryBaselines = new SummaryBaselines(id, participants.getIds(), deltaSummaries);
+		this.partnerSelector = PartnerSelector.create(partnerSelection, participants, this);
 		
 
 		//  Sets the Timer for TSAE sessions
+	    pool = new ConnectionPool(connectionPool, connectionIdleTimeout);
 	    tsae = new TSAESessionOriginatorSide(this);
-		tsaeSessionTimer = new Timer();
-		tsaeSessionTimer.scheduleAtFixedRate(tsae, sessionDelay, sessionPeriod);
+	    rumorMonger = new RumorMonger(this, rumorFanout, rumorTtl);
+	    propagationScheduler = new PropagationScheduler(this, propagationMaxDelay, propagationMaxBatch);
+		if (adaptiveSessionPeriod){
+			adaptiveSessionScheduler = new AdaptiveSessionScheduler(this, sessionPeriod, sessionPeriodMin, sessionPeriodMax);
+			adaptiveSessionScheduler.start(sessionDelay);
+		} else {
+			tsaeSessionTimer = new Timer();
+			tsaeSessionTimer.scheduleAtFixedRate(tsae, sessionDelay, sessionPeriod);
+		}
 	}
 
 	public void stopTSAEsessions(){
-		this.tsaeSessionTimer.cancel();
+		if (tsaeSessionTimer != null){
+			this.tsaeSessionTimer.cancel();
+		}
+		if (adaptiveSessionScheduler != null){
+			this.adaptiveSessionScheduler.shutdown();
+		}
+		this.propagationScheduler.shutdown();
+		this.sessionExecutor.shutdown();
+		this.pool.shutdown();
+		this.applyLanes.shutdown();
+		lsim.log(Level.INFO, "[ServerData] " + metrics + " " + holdback + " " + logPurger
+				+ (store != null ? " " + store : ""));
+		this.logPurger.shutdown();
+		if (store != null){
+			store.close(snapshotState());
+		}
+	}
+
+	// ******************************
+	// *** persistence
+	// ******************************
+
+	/**
+	 * Reopens the persistent store of this server: loads the last checkpoint
+	 * and the stored log, and replays the operations logged after the checkpoint.
+	 * @param participants
+	 */
+	private void restoreState(List<String> participants){
+		try {
+			store = new PersistentLogStore(new File(dataDir, URLEncoder.encode(id, "UTF-8")), segmentSize);
+		} catch (IOException e) {
+			lsim.log(Level.ERROR, "Unable to open the persistent store in " + dataDir + ": " + e.getMessage());
+			return;
+		}
+		long start = System.currentTimeMillis();
+		ServerState state = store.loadState();
+		if (state != null && state.getSummary() != null){
+			boolean sameParticipants = true;
+			for (String node : participants){
+				sameParticipants &= state.getSummary().getLast(node) != null;
+			}
+			if (sameParticipants){
+				this.summary = state.getSummary();
+				this.ack = state.getAck();
+				this.recipes = state.getRecipes();
+				this.tombstones = new Vector<Timestamp>(state.getTombstones());
+			}
+		}
+		this.log.restore(store);
+
+		// operations logged after the checkpoint
+		int replayed = 0;
+		for (String node : participants){
+			Timestamp last = this.summary.getLast(node);
+			for (Operation op : store.read(node, last.getSeqnumber())){
+				this.summary.updateTimestamp(op.getTimestamp());
+				applyToRecipes(op);
+				replayed++;
+			}
+		}
+		Timestamp own = this.summary.getLast(id);
+		if (own != null && !own.isNullTimestamp()){
+			this.seqnum = own.getSeqnumber();
+		}
+		lsim.log(Level.INFO, "Restored state from " + dataDir + " in " + (System.currentTimeMillis() - start)
+				+ " ms (" + replayed + " operations replayed)");
+	}
+
+	/**
+	 * @return a consistent copy of the state (to checkpoint or to send to a partner)
+	 */
+	public synchronized ServerState snapshotState(){
+		return new ServerState(summary.clone(), ack.clone(), recipes.clone(), new Vector<Timestamp>(tombstones));
 	}
 	
 	public boolean end(){
@@ -152,10 +341,259 @@ public class ServerData {
 		this.log.add(op);
 		this.summary.updateTimestamp(timestamp);
 		this.recipes.add(rcpe);
+		rumorMonger.spread(op);
 	}
 	
 	public synchronized void removeRecipe(String recipeTitle){
-		System.err.println("Error: removeRecipe method (recipesService.serverData) not yet implemented");
+		Recipe rcpe = this.recipes.get(recipeTitle);
+		if (rcpe == null){
+			return;
+		}
+		Timestamp timestamp= nextTimestamp();
+		Operation op=new RemoveOperation(recipeTitle, rcpe.getTimestamp(), timestamp);
+
+		this.log.add(op);
+		this.summary.updateTimestamp(timestamp);
+		this.recipes.remove(recipeTitle);
+		rumorMonger.spread(op);
+	}
+
+	/**
+	 * Executes an operation received from a partner (see execOperations)
+	 * @param op
+	 * @return number of operations executed: op, if it was new and the next
+	 *         one of its host, and the parked ones that follow it
+	 */
+	public synchronized int execOperation(Operation op){
+		return execOperations(Collections.singletonList(op));
+	}
+
+	/**
+	 * Checks whether a partner should receive a snapshot of the state
+	 * instead of the operations it misses (see SnapshotTransfer): when some
+	 * of them are no longer in the log or when there are more than
+	 * snapshotThreshold operations and more than recipes
+	 * @param partnerSummary
+	 * @return true if a snapshot has to be sent
+	 */
+	public synchronized boolean needsSnapshot(TimestampVector partnerSummary){
+		if (!snapshotTransfer){
+			return false;
+		}
+		long missing = 0;
+		for (String node : participants.getIds()){
+			long mine = this.summary.getLastSeq(node);
+			long theirs = Math.max(partnerSummary.getLastSeq(node), -1);
+			if (theirs < mine){
+				if (this.log.firstSeqNewer(node, theirs) != theirs + 1){
+					return true;
+				}
+				missing += mine - theirs;
+			}
+		}
+		return missing > snapshotThreshold && missing > this.recipes.size();
+	}
+
+	/**
+	 * Installs a snapshot of the state of a partner: recipes and tombstones
+	 * are replaced by the ones of the snapshot, the operations of the log the
+	 * snapshot does not include are applied again on top of them, and summary
+	 * and ack are merged with the ones of the snapshot.
+	 * @param state
+	 */
+	public synchronized void installSnapshot(ServerState state){
+		List<Operation> notIncluded = this.log.listNewer(state.getSummary());
+		this.recipes = state.getRecipes();
+		this.tombstones = new Vector<Timestamp>(state.getTombstones());
+		for (Operation op : notIncluded){
+			applyToRecipes(op);
+		}
+		this.summary.updateMax(state.getSummary());
+		this.ack.updateMax(state.getAck());
+		long own = this.summary.getLastSeq(id);
+		synchronized (timestampLock){
+			if (own > seqnum){
+				seqnum = own;
+			}
+		}
+		lsim.log(Level.INFO, "[ServerData] snapshot installed (" + notIncluded.size() + " operations applied again)");
+		ackUpdated();
+	}
+
+	/**
+	 * Checks whether a TSAE session with a partner can not bring both
+	 * servers up to date because some of the operations one of them misses
+	 * are no longer in the log of the other one (they have been purged).
+	 * Has to be called once the operations of the partner have been
+	 * received. If there is a gap the summaries can only be merged once the
+	 * recipes have been reconciled (see mergeRecipes).
+	 * @param partnerSummary
+	 * @return true if there is a gap
+	 */
+	public synchronized boolean hasGap(TimestampVector partnerSummary){
+		for (String node : participants.getIds()){
+			long mine = this.summary.getLastSeq(node);
+			long theirs = partnerSummary.getLastSeq(node);
+			if (mine < theirs){
+				// the partner has not sent them
+				return true;
+			}
+			if (theirs < mine && this.log.firstSeqNewer(node, theirs) != Math.max(theirs, -1) + 1){
+				// the next operation the partner needs is not in the log
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Merges the recipes of a partner that are in some leaves of the Merkle
+	 * tree (see RecipesMerkleTree) with the local ones in the same leaves:
+	 * 	- a recipe of the partner not covered by the local summary has not
+	 * 	  been received: it is added (unless it has a tombstone)
+	 * 	- a local recipe the partner does not have but is covered by the
+	 * 	  partner's summary has been removed by the partner: it is removed
+	 * @param leaves
+	 * @param partnerRecipes recipes of the partner in leaves
+	 * @param partnerSummary
+	 * @return number of recipes added or removed
+	 */
+	public synchronized int mergeRecipes(int[] leaves, List<Recipe> partnerRecipes, TimestampVector partnerSummary){
+		Set<Integer> selected = new HashSet<Integer>();
+		for (int i = 0; i < leaves.length; i++){
+			selected.add(leaves[i]);
+		}
+		Map<String, Recipe> theirs = new HashMap<String, Recipe>();
+		int changes = 0;
+		for (Recipe rcpe : partnerRecipes){
+			theirs.put(rcpe.getTitle(), rcpe);
+			Timestamp timestamp = rcpe.getTimestamp();
+			if (rcpe.equals(this.recipes.get(rcpe.getTitle()))
+					|| this.summary.getLastSeq(timestamp.getHostid()) >= timestamp.getSeqnumber()){
+				continue;
+			}
+			if (!this.tombstones.remove(timestamp)){
+				this.recipes.add(rcpe);
+				changes++;
+			}
+		}
+		for (Recipe rcpe : this.recipes.toList()){
+			Timestamp timestamp = rcpe.getTimestamp();
+			if (selected.contains(RecipesMerkleTree.leaf(rcpe.getTitle()))
+					&& !rcpe.equals(theirs.get(rcpe.getTitle()))
+					&& partnerSummary.getLastSeq(timestamp.getHostid()) >= timestamp.getSeqnumber()){
+				this.recipes.remove(rcpe.getTitle());
+				changes++;
+			}
+		}
+		return changes;
+	}
+
+	/**
+	 * executes the operations received from a partner in one pass: they are
+	 * grouped per host and passed through the holdback buffer, which parks
+	 * the ones received before the operations preceding them (see
+	 * HoldbackBuffer). The runs of consecutive operations are inserted into
+	 * the log holding the lock of each host's log once (in parallel for large
+	 * batches of several hosts, see ApplyLanes), then applied to the
+	 * recipes holding their lock once (readers see either none or all of
+	 * them) and finally the summary is updated once per host, so it never
+	 * covers operations that have not been received
+	 * @param ops
+	 * @return number of operations executed (not received before)
+	 */
+	public synchronized int execOperations(List<Operation> ops){
+		Map<String, List<Operation>> hostOps = new HashMap<String, List<Operation>>();
+		for (int i = 0; i < ops.size(); i++){
+			String host = ops.get(i).getTimestamp().getHostid();
+			List<Operation> list = hostOps.get(host);
+			if (list == null){
+				list = new ArrayList<Operation>();
+				hostOps.put(host, list);
+			}
+			list.add(ops.get(i));
+		}
+		Map<String, List<Operation>> runs = new HashMap<String, List<Operation>>();
+		for (Map.Entry<String, List<Operation>> entry : hostOps.entrySet()){
+			runs.put(entry.getKey(), holdback.offer(entry.getKey(), entry.getValue(), nextSeq(entry.getKey())));
+		}
+		return execRuns(runs);
+	}
+
+	/**
+	 * executes the parked operations that follow the summary (after the
+	 * summary has been updated without receiving operations, e.g. when a
+	 * snapshot is installed). The parked operations the summary already
+	 * covers are discarded: the summary is only merged with a partner's one
+	 * when all the operations it covers are in the log or the recipes have
+	 * been reconciled (see hasGap)
+	 * @return number of operations executed
+	 */
+	private synchronized int releaseHoldback(){
+		Map<String, List<Operation>> runs = new HashMap<String, List<Operation>>();
+		for (String host : holdback.getHosts()){
+			runs.put(host, holdback.release(host, nextSeq(host)));
+		}
+		return execRuns(runs);
+	}
+
+	/**
+	 * @param runs runs of consecutive operations of each host, each one
+	 *        starting at the next operation of its host
+	 * @return number of operations executed
+	 */
+	private int execRuns(Map<String, List<Operation>> runs){
+		List<Operation> executed = new ArrayList<Operation>();
+		List<Timestamp> lastTimestamps = new ArrayList<Timestamp>(runs.size());
+		for (List<Operation> added : applyLanes.addAll(runs).values()){
+			if (!added.isEmpty()){
+				executed.addAll(added);
+				lastTimestamps.add(added.get(added.size() - 1).getTimestamp());
+			}
+		}
+		synchronized (this.recipes){
+			for (int i = 0; i < executed.size(); i++){
+				applyToRecipes(executed.get(i));
+			}
+		}
+		for (int i = 0; i < lastTimestamps.size(); i++){
+			this.summary.updateTimestamp(lastTimestamps.get(i));
+		}
+		return executed.size();
+	}
+
+	/**
+	 * @param host
+	 * @return sequence number of the next operation of host (the one following the summary)
+	 */
+	private long nextSeq(String host){
+		long last = this.summary.getLastSeq(host);
+		return (last < 0) ? 0 : last + 1;
+	}
+
+	/**
+	 * applies op to the recipes data structure
+	 * @param op
+	 */
+	private void applyToRecipes(Operation op){
+		switch (op.getType()){
+		case ADD:
+			Recipe rcpe = ((AddOperation) op).getRecipe();
+			if (!this.tombstones.remove(rcpe.getTimestamp())){
+				this.recipes.add(rcpe);
+			}
+			break;
+		case REMOVE:
+			RemoveOperation removeOp = (RemoveOperation) op;
+			Recipe current = this.recipes.get(removeOp.getRecipeTitle());
+			if (current != null && current.getTimestamp().equals(removeOp.getRecipeTimestamp())){
+				this.recipes.remove(removeOp.getRecipeTitle());
+			} else {
+				// the add operation has not been received yet
+				this.tombstones.add(removeOp.getRecipeTimestamp());
+			}
+			break;
+		}
 	}
 	
 
@@ -174,6 +612,12 @@ public class ServerData {
 	public Recipes getRecipes(){
 		return recipes;
 	}
+	public LogPurger getLogPurger(){
+		return logPurger;
+	}
+	public SummaryBaselines getSummaryBaselines(){
+		return summaryBaselines;
+	}
 
 	// ******************************
 	// *** getters and setters
@@ -210,6 +654,144 @@ public class ServerData {
 	public void setSessionPeriod(long sessionPeriod) {
 		this.sessionPeriod = sessionPeriod;
 	}
+	public void setAdaptiveSessionPeriod(boolean adaptiveSessionPeriod) {
+		this.adaptiveSessionPeriod = adaptiveSessionPeriod;
+	}
+	public void setSessionPeriodMin(long sessionPeriodMin) {
+		this.sessionPeriodMin = sessionPeriodMin;
+	}
+	public void setSessionPeriodMax(long sessionPeriodMax) {
+		this.sessionPeriodMax = sessionPeriodMax;
+	}
+	public AdaptiveSessionScheduler getAdaptiveSessionScheduler() {
+		return adaptiveSessionScheduler;
+	}
+	public void setDataDir(String dataDir) {
+		this.dataDir = dataDir;
+	}
+	public void setSegmentSize(int segmentSize) {
+		this.segmentSize = segmentSize;
+	}
+	public int getBatchSize() {
+		return batchSize;
+	}
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+	public int getMaxParallelSessions() {
+		return maxParallelSessions;
+	}
+	public void setMaxParallelSessions(int maxParallelSessions) {
+		this.maxParallelSessions = maxParallelSessions;
+	}
+	public long getSessionTimeout() {
+		return sessionTimeout;
+	}
+	public void setSessionTimeout(long sessionTimeout) {
+		this.sessionTimeout = sessionTimeout;
+	}
+	public PropagationScheduler getPropagationScheduler() {
+		return propagationScheduler;
+	}
+	public void setPropagationMaxDelay(long propagationMaxDelay) {
+		this.propagationMaxDelay = propagationMaxDelay;
+	}
+	public void setPropagationMaxBatch(int propagationMaxBatch) {
+		this.propagationMaxBatch = propagationMaxBatch;
+	}
+	public ConnectionPool getConnectionPool() {
+		return pool;
+	}
+	public void setConnectionPool(boolean connectionPool) {
+		this.connectionPool = connectionPool;
+	}
+	public long getConnectionIdleTimeout() {
+		return connectionIdleTimeout;
+	}
+	public void setConnectionIdleTimeout(long connectionIdleTimeout) {
+		this.connectionIdleTimeout = connectionIdleTimeout;
+	}
+	public SessionExecutor getSessionExecutor() {
+		return sessionExecutor;
+	}
+	/**
+	 * @param virtualThreads true to run each TSAE session in a virtual thread
+	 */
+	public void setVirtualThreads(boolean virtualThreads) {
+		if (virtualThreads != sessionExecutor.isVirtual()){
+			sessionExecutor.shutdown();
+			sessionExecutor = SessionExecutor.create(virtualThreads);
+		}
+	}
+	public boolean nioPartnerSide() {
+		return nioPartnerSide;
+	}
+	public void setNioPartnerSide(boolean nioPartnerSide) {
+		this.nioPartnerSide = nioPartnerSide;
+	}
+	public int getMaxPartnerConnections() {
+		return maxPartnerConnections;
+	}
+	public void setMaxPartnerConnections(int maxPartnerConnections) {
+		this.maxPartnerConnections = maxPartnerConnections;
+	}
+	public void setSnapshotTransfer(boolean snapshotTransfer) {
+		this.snapshotTransfer = snapshotTransfer;
+	}
+	public void setSnapshotThreshold(long snapshotThreshold) {
+		this.snapshotThreshold = snapshotThreshold;
+	}
+	public boolean merkleReconciliation() {
+		return merkleReconciliation;
+	}
+	public void setMerkleReconciliation(boolean merkleReconciliation) {
+		this.merkleReconciliation = merkleReconciliation;
+	}
+	public void setHoldbackSize(int holdbackSize) {
+		this.holdbackSize = holdbackSize;
+	}
+	public void setApplyLanes(int applyLanes) {
+		this.applyLanesSize = applyLanes;
+	}
+	public HoldbackBuffer getHoldback() {
+		return holdback;
+	}
+	public RumorMonger getRumorMonger() {
+		return rumorMonger;
+	}
+	public void setRumorFanout(int rumorFanout) {
+		this.rumorFanout = rumorFanout;
+	}
+	public void setRumorTtl(int rumorTtl) {
+		this.rumorTtl = rumorTtl;
+	}
+	public PartnerSelector getPartnerSelector() {
+		return partnerSelector;
+	}
+	public void setPartnerSelection(PartnerSelection partnerSelection) {
+		this.partnerSelection = partnerSelection;
+	}
+	public boolean digestPrecheck() {
+		return digestPrecheck;
+	}
+	public void setDigestPrecheck(boolean digestPrecheck) {
+		this.digestPrecheck = digestPrecheck;
+	}
+	public TSAEMetrics getTSAEMetrics() {
+		return metrics;
+	}
+	/**
+	 * Servers with equal summary and ack have the same digest. Sessions
+	 * refresh the row of this server in the ack before taking it, as they
+	 * do before sending the ack.
+	 * @return 64-bit digest of the summary and the ack
+	 */
+	public synchronized long stateDigest() {
+		return summary.digest() * 0x9E3779B97F4A7C15L + ack.digest();
+	}
+	public void setDeltaSummaries(boolean deltaSummaries) {
+		this.deltaSummaries = deltaSummaries;
+	}
 	public TSAESessionOriginatorSide getTSAESessionOriginatorSide(){
 		return this.tsae;
 	}
@@ -221,6 +803,25 @@ public class ServerData {
 	public List<Host> getRandomPartners(int num){
 		return participants.getRandomPartners(num);
 	}
+
+	/**
+	 * To be called after the summary and the ack have been updated: executes
+	 * the parked operations the summary now reaches and requests a
+	 * (background) purge of the log (if purge is activated).
+	 */
+	public void ackUpdated(){
+		releaseHoldback();
+		if (store != null){
+			store.scheduleCheckpoint(new Callable<ServerState>(){
+				public ServerState call(){
+					return snapshotState();
+				}
+			});
+		}
+		if (SimulationData.getInstance().purge()){
+			this.logPurger.schedulePurge();
+		}
+	}
 	
 	/**
 	 * waits until the Server is ready to receive TSAE sessions from partner servers   
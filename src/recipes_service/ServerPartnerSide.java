@@ -24,9 +24,13 @@ import java.io.IOException;
 import java.net.DatagramSocket;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
+import java.nio.channels.ServerSocketChannel;
 
 import edu.uoc.dpcs.lsim.LSimFactory;
 import edu.uoc.dpcs.lsim.logger.LoggerManager.Level;
+import recipes_service.activity_simulation.SimulationData;
+import recipes_service.communication.WireFormat;
+import recipes_service.tsae.sessions.NioPartnerEngine;
 import recipes_service.tsae.sessions.TSAESessionPartnerSide;
 
 /**
@@ -40,6 +44,9 @@ public class ServerPartnerSide  extends Thread{
 	
 	private ServerSocket serverSocket = null;
 
+	// not null when sessions are served by a NioPartnerEngine
+	private ServerSocketChannel serverChannel = null;
+
 	boolean servicePublished = false;
 
 	public ServerPartnerSide(int port, ServerData serverData) {
@@ -64,17 +71,29 @@ public class ServerPartnerSide  extends Thread{
 		// waits until the Server is ready to receive TSAE sessions from partner servers
 		serverData.waitServerConnected();
 		
+		// serves all TSAE sessions from partner servers in this thread
+		if (serverChannel != null){
+			try {
+				new NioPartnerEngine(serverChannel, serverData, serverData.getMaxPartnerConnections()).run();
+			} catch (IOException e) {
+				LSimFactory.getWorkerInstance().log(Level.ERROR,
+						e.getMessage()
+						);
+				e.printStackTrace();
+			}
+		}
+
 		// accept remote TSAE connections
-		// starts a new thread for each TSAE sessions from a partner server 
+		// runs each TSAE session from a partner server in its own thread (see SessionExecutor)
 
-		while (!serverData.end()){
+		while (serverChannel == null && !serverData.end()){
 			try {
 				// accept will block for this amount of time.
 				// After this time a SocketTimeoutException will rise.
 				// if server should stop it will close and finish.
 				// In other case it will block again. 
 				serverSocket.setSoTimeout(20000);
-				new TSAESessionPartnerSide(serverSocket.accept(), this.serverData).start();
+				serverData.getSessionExecutor().execute(new TSAESessionPartnerSide(serverSocket.accept(), this.serverData));
 			} catch (java.net.SocketTimeoutException e){
 				;
 			}catch (IOException e1) {
@@ -118,6 +137,22 @@ public class ServerPartnerSide  extends Thread{
 	 * Auxiliary functions
 	 */
 
+	/**
+	 * the NIO partner side requires the (framed) binary format
+	 */
+	private boolean useNio(){
+		if (!serverData.nioPartnerSide()){
+			return false;
+		}
+		if (SimulationData.getInstance().wireFormat() != WireFormat.BINARY){
+			LSimFactory.getWorkerInstance().log(Level.WARN,
+					"NIO partner side requires wireFormat=binary. Using a thread per TSAE session"
+					);
+			return false;
+		}
+		return true;
+	}
+
 	public boolean servicePublished(int port) {
 		// check if port is used by a UDP service
 		DatagramSocket ds = null;
@@ -138,7 +173,12 @@ public class ServerPartnerSide  extends Thread{
 		// starts a thread to deal with TSAE sessions from partner servers 
 
 		try {
-			serverSocket = new ServerSocket();
+			if (useNio()){
+				serverChannel = ServerSocketChannel.open();
+				serverSocket = serverChannel.socket();
+			} else {
+				serverSocket = new ServerSocket();
+			}
 			serverSocket.setReuseAddress(true);
 			serverSocket.bind(new InetSocketAddress(port));
 //			serverSocket = new ServerSocket(port);
@@ -153,6 +193,8 @@ public class ServerPartnerSide  extends Thread{
 					/* should not be thrown */
 				}
 			}
+			serverSocket = null;
+			serverChannel = null;
 			return false;
 		}
 		return true;
@@ -81,7 +81,7 @@ public class ActivitySimulation extends TimerTask{
 				lsim.log(Level.INFO, "["+serverData.getId()+"] ADD recipe: "+String.valueOf(chars));
 
 				serverData.addRecipe(String.valueOf(chars), "Content--"+String.valueOf(chars));
-				serverData.getTSAESessionOriginatorSide().sessionWithN(serverData.getPropagationDegree());
+				serverData.getPropagationScheduler().writeCommitted();
 			}			
 			//probability of deleting a recipe
 			if(simulationData.deletionActivated()
@@ -93,7 +93,7 @@ public class ActivitySimulation extends TimerTask{
 					System.out.println("["+serverData.getId()+"] REMOVE recipe: "+recipeTitle);
 					lsim.log(Level.INFO, "["+serverData.getId()+"] REMOVE recipe: "+recipeTitle);
 					serverData.removeRecipe(recipeTitle);
-					serverData.getTSAESessionOriginatorSide().sessionWithN(serverData.getPropagationDegree());
+					serverData.getPropagationScheduler().writeCommitted();
 				}				
 			}
 
@@ -27,6 +27,7 @@ import java.util.Timer;
 import edu.uoc.dpcs.lsim.LSimFactory;
 import edu.uoc.dpcs.lsim.logger.LoggerManager.Level;
 import recipes_service.ServerData;
+import recipes_service.communication.WireFormat;
 
 /**
  * @author Joan-Manuel Marques
@@ -66,6 +67,21 @@ public class SimulationData {
 	//	* true: purge is activated
 	//	* false: purge deactivated
 	private boolean purge = true; 
+
+	// format used to write TSAE session messages (any format can be read)
+	private WireFormat wireFormat = WireFormat.JAVA;
+
+	// compression of TSAE session streams (used on a connection only if both
+	// sides have it activated) and minimum size (bytes) of a compressed message
+	private boolean compression = false;
+	private int compressionThreshold = 256;
+
+	// streaming mode of java serialization streams of TSAE sessions: the
+	// stream is reset every streamResetObjects messages or streamResetBytes
+	// bytes (0: no limit) and class descriptors are written once
+	private boolean streamingMode = false;
+	private int streamResetObjects = 256;
+	private long streamResetBytes = 1024 * 1024;
 	
 	// To identify when the server should stop (end simulation)
 //	private boolean endSimulation = false;
@@ -248,6 +264,48 @@ public class SimulationData {
 	public void setPurge(boolean purge){
 		this.purge = purge;
 	}
+
+	public WireFormat wireFormat(){
+		return this.wireFormat;
+	}
+	public void setWireFormat(WireFormat wireFormat){
+		this.wireFormat = wireFormat;
+	}
+
+	public boolean compression(){
+		return this.compression;
+	}
+	public void setCompression(boolean compression){
+		this.compression = compression;
+	}
+
+	public int compressionThreshold(){
+		return this.compressionThreshold;
+	}
+	public void setCompressionThreshold(int compressionThreshold){
+		this.compressionThreshold = compressionThreshold;
+	}
+
+	public boolean streamingMode(){
+		return this.streamingMode;
+	}
+	public void setStreamingMode(boolean streamingMode){
+		this.streamingMode = streamingMode;
+	}
+
+	public int streamResetObjects(){
+		return this.streamResetObjects;
+	}
+	public void setStreamResetObjects(int streamResetObjects){
+		this.streamResetObjects = streamResetObjects;
+	}
+
+	public long streamResetBytes(){
+		return this.streamResetBytes;
+	}
+	public void setStreamResetBytes(long streamResetBytes){
+		this.streamResetBytes = streamResetBytes;
+	}
 	
 	// to distinguish between an execution with all Servers running in a single computer
 	// and an execution with Servers running in different computers (or more than one 
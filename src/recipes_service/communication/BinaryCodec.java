@@ -0,0 +1,684 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package recipes_service.communication;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import recipes_service.data.AddOperation;
+import recipes_service.data.Operation;
+import recipes_service.data.OperationType;
+import recipes_service.data.Recipe;
+import recipes_service.data.RemoveOperation;
+import recipes_service.tsae.data_structures.SummaryDelta;
+import recipes_service.tsae.data_structures.Timestamp;
+import recipes_service.tsae.data_structures.TimestampMatrix;
+import recipes_service.tsae.data_structures.TimestampVector;
+
+/**
+ * Hand-written binary encoding of the messages of a TSAE session.
+ * 
+ * A binary stream starts with the byte MAGIC (a java serialization stream
+ * starts with 0xAC) followed by frames: [varint length][payload]. The payload
+ * starts with a tag and the session number. Sequence numbers are written as
+ * zig-zag varints and strings are written as UTF-8. Host ids are interned
+ * per stream: the first occurrence is written in full and later ones as a
+ * reference to it. Objects without a specific encoding are written with
+ * java serialization inside a frame.
+ * 
+ * A codec keeps the state of one direction of one stream: a stream uses one
+ * instance to write or one instance to read.
+ *
+ */
+public class BinaryCodec {
+
+	public static final int MAGIC = 0xB1;
+
+	public static final int MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	// frame tags
+	private static final int TAG_JAVA = 0;
+	private static final int TAG_AE_REQUEST = 1;
+	private static final int TAG_OPERATION = 2;
+	private static final int TAG_END_TSAE = 3;
+	private static final int TAG_OPERATION_BATCH = 4;
+	private static final int TAG_STATE_DIGEST = 5;
+	private static final int TAG_RUMOR = 6;
+	private static final int TAG_SNAPSHOT_CHUNK = 7;
+
+	// flags of an AE request
+	private static final int AE_DELTA = 1;
+	private static final int AE_SUMMARY = 2;
+	private static final int AE_ACK = 4;
+
+	// interned ids (0: null; 1: new id follows; n>1: id number n-2)
+	private final Map<String, Integer> writtenIds = new HashMap<String, Integer>();
+	private final List<String> readIds = new ArrayList<String>();
+
+	private final ByteArrayOutputStream frame = new ByteArrayOutputStream(256);
+	private final DataOutputStream frameOut = new DataOutputStream(frame);
+	private final ByteArrayOutputStream packet = new ByteArrayOutputStream(256);
+
+	/**
+	 * writes the first byte of a binary stream
+	 * @param out
+	 * @throws IOException
+	 */
+	public static void writeHeader(OutputStream out) throws IOException {
+		out.write(MAGIC);
+		out.flush();
+	}
+
+	/**
+	 * writes obj as a frame
+	 * @param out
+	 * @param obj
+	 * @throws IOException
+	 */
+	public void writeFrame(OutputStream out, Object obj) throws IOException {
+		frame.reset();
+		encode(frameOut, obj);
+		frameOut.flush();
+		// length and payload are written with a single write
+		packet.reset();
+		writeVarint(packet, frame.size());
+		frame.writeTo(packet);
+		packet.writeTo(out);
+		out.flush();
+	}
+
+	/**
+	 * reads a frame
+	 * @param in
+	 * @return the object in the frame
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public Object readFrame(InputStream in) throws IOException, ClassNotFoundException {
+		long length = readVarint(in);
+		if (length < 0 || length > MAX_FRAME_LENGTH) {
+			throw new StreamCorruptedException("Invalid frame length: " + length);
+		}
+		byte[] data = new byte[(int) length];
+		new DataInputStream(in).readFully(data);
+		return decode(new DataInputStream(new ByteArrayInputStream(data)));
+	}
+
+	/**
+	 * @param obj
+	 * @return the frame (length and payload) that encodes obj
+	 * @throws IOException
+	 */
+	public byte[] toFrame(Object obj) throws IOException {
+		frame.reset();
+		encode(frameOut, obj);
+		frameOut.flush();
+		packet.reset();
+		writeVarint(packet, frame.size());
+		frame.writeTo(packet);
+		return packet.toByteArray();
+	}
+
+	/**
+	 * Reads the length of the frame that starts at the position of buf. If
+	 * the length is complete the position is moved after it; otherwise it is
+	 * not modified.
+	 * 
+	 * @param buf
+	 * @return the length of the payload, or -1 if more bytes are needed
+	 * @throws IOException if the length is invalid
+	 */
+	public static int readFrameLength(ByteBuffer buf) throws IOException {
+		long length = 0;
+		int pos = buf.position();
+		for (int shift = 0; shift < 35; shift += 7) {
+			if (pos >= buf.limit()) {
+				return -1;
+			}
+			int b = buf.get(pos++) & 0xFF;
+			length |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				if (length > MAX_FRAME_LENGTH) {
+					throw new StreamCorruptedException("Invalid frame length: " + length);
+				}
+				buf.position(pos);
+				return (int) length;
+			}
+		}
+		throw new StreamCorruptedException("Malformed frame length");
+	}
+
+	/**
+	 * @param data
+	 * @param offset
+	 * @param length
+	 * @return the object encoded in the payload of a frame
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public Object fromPayload(byte[] data, int offset, int length) throws IOException, ClassNotFoundException {
+		return decode(new DataInputStream(new ByteArrayInputStream(data, offset, length)));
+	}
+
+	// ******************************
+	// *** messages
+	// ******************************
+
+	private void encode(DataOutputStream out, Object obj) throws IOException {
+		if (!(obj instanceof Message) || !isEncoded(((Message) obj).type())) {
+			out.writeByte(TAG_JAVA);
+			ObjectOutputStream oos = new ObjectOutputStream(out);
+			oos.writeObject(obj);
+			oos.flush();
+			return;
+		}
+		Message msg = (Message) obj;
+		switch (msg.type()) {
+		case AE_REQUEST:
+			out.writeByte(TAG_AE_REQUEST);
+			writeSigned(out, msg.getSessionNumber());
+			writeAErequest(out, (MessageAErequest) msg);
+			break;
+		case OPERATION:
+			out.writeByte(TAG_OPERATION);
+			writeSigned(out, msg.getSessionNumber());
+			writeOperation(out, ((MessageOperation) msg).getOperation());
+			break;
+		case OPERATION_BATCH:
+			out.writeByte(TAG_OPERATION_BATCH);
+			writeSigned(out, msg.getSessionNumber());
+			List<Operation> ops = ((MessageOperationBatch) msg).getOperations();
+			writeVarint(out, ops.size());
+			for (int i = 0; i < ops.size(); i++) {
+				writeOperation(out, ops.get(i));
+			}
+			break;
+		case END_TSAE:
+			out.writeByte(TAG_END_TSAE);
+			writeSigned(out, msg.getSessionNumber());
+			break;
+		case STATE_DIGEST:
+			out.writeByte(TAG_STATE_DIGEST);
+			writeSigned(out, msg.getSessionNumber());
+			out.writeLong(((MessageStateDigest) msg).getDigest());
+			break;
+		case RUMOR:
+			out.writeByte(TAG_RUMOR);
+			writeSigned(out, msg.getSessionNumber());
+			writeVarint(out, ((MessageRumor) msg).getTtl());
+			List<Operation> run = ((MessageRumor) msg).getOperations();
+			writeVarint(out, run.size());
+			for (int i = 0; i < run.size(); i++) {
+				writeOperation(out, run.get(i));
+			}
+			break;
+		case SNAPSHOT_CHUNK:
+			out.writeByte(TAG_SNAPSHOT_CHUNK);
+			writeSigned(out, msg.getSessionNumber());
+			MessageSnapshotChunk chunk = (MessageSnapshotChunk) msg;
+			writeVarint(out, chunk.getIndex());
+			writeVarint(out, chunk.getCount());
+			writeVarint(out, chunk.getData().length);
+			out.write(chunk.getData());
+			break;
+		default:
+			break;
+		}
+	}
+
+	private static boolean isEncoded(MsgType type) {
+		return type == MsgType.AE_REQUEST || type == MsgType.OPERATION || type == MsgType.OPERATION_BATCH
+				|| type == MsgType.END_TSAE || type == MsgType.STATE_DIGEST
+				|| type == MsgType.RUMOR || type == MsgType.SNAPSHOT_CHUNK;
+	}
+
+	private Object decode(DataInputStream in) throws IOException, ClassNotFoundException {
+		int tag = in.readUnsignedByte();
+		if (tag == TAG_JAVA) {
+			return new ObjectInputStream(in).readObject();
+		}
+		int sessionNumber = (int) readSigned(in);
+		Message msg;
+		switch (tag) {
+		case TAG_AE_REQUEST:
+			msg = readAErequest(in);
+			break;
+		case TAG_OPERATION:
+			msg = new MessageOperation(readOperation(in));
+			break;
+		case TAG_OPERATION_BATCH:
+			int n = readCount(in);
+			List<Operation> ops = new ArrayList<Operation>(Math.min(n, 1024));
+			for (int i = 0; i < n; i++) {
+				ops.add(readOperation(in));
+			}
+			msg = new MessageOperationBatch(ops);
+			break;
+		case TAG_END_TSAE:
+			msg = new MessageEndTSAE();
+			break;
+		case TAG_STATE_DIGEST:
+			msg = new MessageStateDigest(in.readLong());
+			break;
+		case TAG_RUMOR:
+			int ttl = (int) readVarint(in);
+			int m = readCount(in);
+			List<Operation> run = new ArrayList<Operation>(Math.min(m, 1024));
+			for (int i = 0; i < m; i++) {
+				run.add(readOperation(in));
+			}
+			msg = new MessageRumor(run, ttl);
+			break;
+		case TAG_SNAPSHOT_CHUNK:
+			int index = readCount(in);
+			int count = readCount(in);
+			byte[] data = new byte[readCount(in)];
+			in.readFully(data);
+			msg = new MessageSnapshotChunk(index, count, data);
+			break;
+		default:
+			throw new StreamCorruptedException("Unknown frame tag: " + tag);
+		}
+		msg.setSessionNumber(sessionNumber);
+		return msg;
+	}
+
+	private void writeAErequest(DataOutputStream out, MessageAErequest msg) throws IOException {
+		int flags = (msg.isDelta() ? AE_DELTA : 0) | (msg.getSummary() != null ? AE_SUMMARY : 0)
+				| (msg.getAck() != null ? AE_ACK : 0);
+		out.writeByte(flags);
+		writeId(out, msg.getSenderId());
+		out.writeLong(msg.getIncarnation());
+		writeSigned(out, msg.getEpoch());
+		out.writeLong(msg.getPeerIncarnation());
+		writeSigned(out, msg.getPeerEpoch());
+		if (msg.isDelta()) {
+			writeSigned(out, msg.getBaseEpoch());
+			writeDelta(out, msg.getDelta());
+		}
+		if (msg.getSummary() != null) {
+			writeVector(out, msg.getSummary());
+		}
+		if (msg.getAck() != null) {
+			writeMatrix(out, msg.getAck());
+		}
+	}
+
+	private MessageAErequest readAErequest(DataInputStream in) throws IOException {
+		int flags = in.readUnsignedByte();
+		String senderId = readId(in);
+		long incarnation = in.readLong();
+		long epoch = readSigned(in);
+		long peerIncarnation = in.readLong();
+		long peerEpoch = readSigned(in);
+		MessageAErequest msg;
+		if ((flags & AE_DELTA) != 0) {
+			long baseEpoch = readSigned(in);
+			msg = new MessageAErequest(readDelta(in), baseEpoch);
+		} else {
+			msg = new MessageAErequest(null, null);
+		}
+		TimestampVector summary = ((flags & AE_SUMMARY) != 0 ? readVector(in) : null);
+		TimestampMatrix ack = ((flags & AE_ACK) != 0 ? readMatrix(in) : null);
+		if (summary != null || ack != null) {
+			msg.expand(summary, ack);
+		}
+		msg.setEpochs(senderId, incarnation, epoch, peerIncarnation, peerEpoch);
+		return msg;
+	}
+
+	// ******************************
+	// *** operations
+	// ******************************
+
+	/**
+	 * The strings of an operation are encoded once and the bytes are kept in
+	 * the operation (see Operation.getEncoded()): an operation sent to
+	 * several partners, or in several sessions, is not encoded again. The
+	 * timestamps are written each time (their ids are interned per stream).
+	 */
+	private void writeOperation(DataOutputStream out, Operation op) throws IOException {
+		out.writeByte(op.getType().ordinal());
+		writeTimestamp(out, op.getTimestamp());
+		out.write(encodedStrings(op));
+		if (op.getType() == OperationType.ADD) {
+			writeTimestamp(out, ((AddOperation) op).getRecipe().getTimestamp());
+		} else {
+			writeTimestamp(out, ((RemoveOperation) op).getRecipeTimestamp());
+		}
+	}
+
+	/**
+	 * @param op
+	 * @return encoded strings of op (computed the first time)
+	 * @throws IOException
+	 */
+	public static byte[] encodedStrings(Operation op) throws IOException {
+		byte[] encoded = op.getEncoded();
+		if (encoded == null) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+			DataOutputStream bytesOut = new DataOutputStream(bytes);
+			if (op.getType() == OperationType.ADD) {
+				Recipe recipe = ((AddOperation) op).getRecipe();
+				writeString(bytesOut, recipe.getTitle());
+				writeString(bytesOut, recipe.getRecipe());
+				writeString(bytesOut, recipe.getAuthor());
+			} else {
+				writeString(bytesOut, ((RemoveOperation) op).getRecipeTitle());
+			}
+			bytesOut.flush();
+			encoded = bytes.toByteArray();
+			op.setEncoded(encoded);
+		}
+		return encoded;
+	}
+
+	/**
+	 * @param type
+	 * @param timestamp
+	 * @param strings encoded strings of the operation (see encodedStrings),
+	 *        which are kept in the operation
+	 * @param recipeTimestamp
+	 * @return the operation
+	 * @throws IOException
+	 */
+	public static Operation decodeOperation(OperationType type, Timestamp timestamp, byte[] strings,
+			Timestamp recipeTimestamp) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(strings));
+		Operation op;
+		if (type == OperationType.ADD) {
+			String title = readString(in);
+			String recipe = readString(in);
+			String author = readString(in);
+			op = new AddOperation(new Recipe(title, recipe, author, recipeTimestamp), timestamp);
+		} else {
+			op = new RemoveOperation(readString(in), recipeTimestamp, timestamp);
+		}
+		op.setEncoded(strings);
+		return op;
+	}
+
+	/**
+	 * @param op
+	 * @return number of bytes of the encoded strings of op. They are known
+	 *         for every operation that has been sent, received or persisted
+	 *         (otherwise they are encoded now)
+	 */
+	public static int encodedSize(Operation op) {
+		try {
+			return encodedStrings(op).length;
+		} catch (IOException e) {
+			// not thrown: written in memory
+			return 0;
+		}
+	}
+
+	private Operation readOperation(DataInputStream in) throws IOException {
+		int type = in.readUnsignedByte();
+		Timestamp timestamp = readTimestamp(in);
+		if (type == OperationType.ADD.ordinal()) {
+			String title = readString(in);
+			String recipe = readString(in);
+			String author = readString(in);
+			return new AddOperation(new Recipe(title, recipe, author, readTimestamp(in)), timestamp);
+		} else if (type == OperationType.REMOVE.ordinal()) {
+			String title = readString(in);
+			return new RemoveOperation(title, readTimestamp(in), timestamp);
+		}
+		throw new StreamCorruptedException("Unknown operation type: " + type);
+	}
+
+	// ******************************
+	// *** TSAE data structures
+	// ******************************
+
+	private void writeTimestamp(DataOutputStream out, Timestamp timestamp) throws IOException {
+		out.writeBoolean(timestamp != null);
+		if (timestamp != null) {
+			writeId(out, timestamp.getHostid());
+			writeSigned(out, timestamp.getSeqnumber());
+		}
+	}
+
+	private Timestamp readTimestamp(DataInputStream in) throws IOException {
+		if (!in.readBoolean()) {
+			return null;
+		}
+		String hostid = readId(in);
+		return new Timestamp(hostid, readSigned(in));
+	}
+
+	private void writeVector(DataOutputStream out, TimestampVector vector) throws IOException {
+		List<String> ids = vector.getParticipants().getIds();
+		writeVarint(out, ids.size());
+		for (int i = 0; i < ids.size(); i++) {
+			writeId(out, ids.get(i));
+			writeSigned(out, vector.getLastSeq(i));
+		}
+	}
+
+	private TimestampVector readVector(DataInputStream in) throws IOException {
+		int n = readCount(in);
+		List<String> ids = new ArrayList<String>(n);
+		long[] seqs = new long[n];
+		for (int i = 0; i < n; i++) {
+			ids.add(readId(in));
+			seqs[i] = readSigned(in);
+		}
+		TimestampVector vector = new TimestampVector(ids);
+		for (int i = 0; i < n; i++) {
+			if (seqs[i] != Timestamp.NULL_TIMESTAMP_SEQ_NUMBER) {
+				vector.updateTimestamp(new Timestamp(ids.get(i), seqs[i]));
+			}
+		}
+		return vector;
+	}
+
+	private void writeMatrix(DataOutputStream out, TimestampMatrix matrix) throws IOException {
+		List<String> ids = matrix.getParticipants().getIds();
+		int n = ids.size();
+		writeVarint(out, n);
+		for (int i = 0; i < n; i++) {
+			writeId(out, ids.get(i));
+		}
+		synchronized (matrix) {
+			for (int i = 0; i < n; i++) {
+				for (int j = 0; j < n; j++) {
+					writeSigned(out, matrix.getLastSeq(i, j));
+				}
+			}
+		}
+	}
+
+	private TimestampMatrix readMatrix(DataInputStream in) throws IOException {
+		int n = readCount(in);
+		List<String> ids = new ArrayList<String>(n);
+		for (int i = 0; i < n; i++) {
+			ids.add(readId(in));
+		}
+		TimestampMatrix matrix = new TimestampMatrix(ids);
+		for (int i = 0; i < n; i++) {
+			TimestampVector row = new TimestampVector(ids);
+			for (int j = 0; j < n; j++) {
+				long seq = readSigned(in);
+				if (seq != Timestamp.NULL_TIMESTAMP_SEQ_NUMBER) {
+					row.updateTimestamp(new Timestamp(ids.get(j), seq));
+				}
+			}
+			matrix.update(ids.get(i), row);
+		}
+		return matrix;
+	}
+
+	private void writeDelta(DataOutputStream out, SummaryDelta delta) throws IOException {
+		String[] hosts = delta.getSummaryHosts();
+		long[] seqs = delta.getSummarySeqs();
+		writeVarint(out, hosts.length);
+		for (int k = 0; k < hosts.length; k++) {
+			writeId(out, hosts[k]);
+			writeSigned(out, seqs[k]);
+		}
+		String[] nodes = delta.getAckNodes();
+		hosts = delta.getAckHosts();
+		seqs = delta.getAckSeqs();
+		writeVarint(out, nodes.length);
+		for (int k = 0; k < nodes.length; k++) {
+			writeId(out, nodes[k]);
+			writeId(out, hosts[k]);
+			writeSigned(out, seqs[k]);
+		}
+	}
+
+	private SummaryDelta readDelta(DataInputStream in) throws IOException {
+		int n = readCount(in);
+		String[] summaryHosts = new String[n];
+		long[] summarySeqs = new long[n];
+		for (int k = 0; k < n; k++) {
+			summaryHosts[k] = readId(in);
+			summarySeqs[k] = readSigned(in);
+		}
+		n = readCount(in);
+		String[] ackNodes = new String[n];
+		String[] ackHosts = new String[n];
+		long[] ackSeqs = new long[n];
+		for (int k = 0; k < n; k++) {
+			ackNodes[k] = readId(in);
+			ackHosts[k] = readId(in);
+			ackSeqs[k] = readSigned(in);
+		}
+		return new SummaryDelta(summaryHosts, summarySeqs, ackNodes, ackHosts, ackSeqs);
+	}
+
+	// ******************************
+	// *** primitives
+	// ******************************
+
+	private void writeId(DataOutputStream out, String id) throws IOException {
+		if (id == null) {
+			writeVarint(out, 0);
+			return;
+		}
+		Integer number = writtenIds.get(id);
+		if (number != null) {
+			writeVarint(out, number + 2);
+		} else {
+			writtenIds.put(id, writtenIds.size());
+			writeVarint(out, 1);
+			writeString(out, id);
+		}
+	}
+
+	private String readId(DataInputStream in) throws IOException {
+		long ref = readVarint(in);
+		if (ref == 0) {
+			return null;
+		} else if (ref == 1) {
+			String id = readString(in);
+			readIds.add(id);
+			return id;
+		} else if (ref - 2 < readIds.size()) {
+			return readIds.get((int) (ref - 2));
+		}
+		throw new StreamCorruptedException("Unknown host id reference: " + ref);
+	}
+
+	// strings: [varint length + 1][UTF-8 bytes] (0: null)
+	private static void writeString(DataOutputStream out, String str) throws IOException {
+		if (str == null) {
+			writeVarint(out, 0);
+			return;
+		}
+		byte[] bytes = str.getBytes(UTF8);
+		writeVarint(out, bytes.length + 1);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		long length = readVarint(in);
+		if (length == 0) {
+			return null;
+		} else if (length - 1 > MAX_FRAME_LENGTH) {
+			throw new StreamCorruptedException("Invalid string length: " + length);
+		}
+		byte[] bytes = new byte[(int) (length - 1)];
+		in.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	private static int readCount(DataInputStream in) throws IOException {
+		long n = readVarint(in);
+		if (n > MAX_FRAME_LENGTH) {
+			throw new StreamCorruptedException("Invalid count: " + n);
+		}
+		return (int) n;
+	}
+
+	// zig-zag encoding: small negative numbers (e.g. null timestamps) are also short
+	private static void writeSigned(OutputStream out, long value) throws IOException {
+		writeVarint(out, (value << 1) ^ (value >> 63));
+	}
+
+	private static long readSigned(InputStream in) throws IOException {
+		long value = readVarint(in);
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	// unsigned LEB128
+	private static void writeVarint(OutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	private static long readVarint(InputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.read();
+			if (b < 0) {
+				throw new EOFException();
+			}
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new StreamCorruptedException("Malformed varint");
+	}
+}
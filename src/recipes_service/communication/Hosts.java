@@ -37,6 +37,9 @@ public class Hosts {
 	
 	private List<String> listIds;
 
+	// all nodes but the local one
+	private Host[] partners = new Host[0];
+
 	static Random rnd = new Random();
 
 	public Hosts(Host localNode){
@@ -49,6 +52,12 @@ public class Hosts {
 	public void add(Host node){
 		this.nodes.add(node);
 		this.listIds.add(node.getId());
+		if (!node.equals(localNode)){
+			Host[] newPartners = new Host[partners.length + 1];
+			System.arraycopy(partners, 0, newPartners, 0, partners.length);
+			newPartners[partners.length] = node;
+			partners = newPartners;
+		}
 	}
 	
 	public int size(){
@@ -62,26 +71,36 @@ public class Hosts {
 	public List<Host> getRandomPartners(int num){
 		List<Host> v = new Vector<Host>();
 
-		if (nodes.size() == 1 || num < 1){
+		if (partners.length == 0 || num < 1){
 			return v;
 		}
 
-		num = Math.min(num, nodes.size()-1);
-
-		@SuppressWarnings("unchecked")
-		List<Host> auxNodes=(Vector<Host>)((Vector<Host>) nodes).clone();
+		num = Math.min(num, partners.length);
 
-		auxNodes.remove(localNode);
+		Host[] auxNodes = partners.clone();
 
-		int n;
-		while(v.size()<num){
-			n= (((int)(rnd.nextDouble() *10000))%auxNodes.size());
-			v.add(auxNodes.get(n));
-			auxNodes.remove(n);
+		// partial Fisher-Yates shuffle
+		for (int i = 0; i < num; i++){
+			int n = i + rnd.nextInt(auxNodes.length - i);
+			Host aux = auxNodes[n];
+			auxNodes[n] = auxNodes[i];
+			auxNodes[i] = aux;
+			v.add(aux);
 		}
 		return v;		
 	}
 
+	/**
+	 * @return all nodes but the local one (shared array: it must not be modified)
+	 */
+	public Host[] getPartners(){
+		return partners;
+	}
+
+	public Host getLocalNode(){
+		return localNode;
+	}
+
 	public List<String> getIds(){
 		return listIds;
 	}
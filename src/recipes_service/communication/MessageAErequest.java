@@ -22,6 +22,7 @@ package recipes_service.communication;
 
 import java.io.Serializable;
 
+import recipes_service.tsae.data_structures.SummaryDelta;
 import recipes_service.tsae.data_structures.TimestampMatrix;
 import recipes_service.tsae.data_structures.TimestampVector;
 
@@ -35,10 +36,84 @@ public class MessageAErequest extends Message implements Serializable{
 	private TimestampVector summary;
 	private TimestampMatrix ack;
 
+	// delta encoding (see SummaryBaselines): instead of summary and ack, only
+	// the entries that changed since the sender's epoch baseEpoch are sent
+	private SummaryDelta delta = null;
+	private long baseEpoch = -1;
+
+	// identification of the summary and ack sent by this message
+	private String senderId = null;
+	private long incarnation;
+	private long epoch = -1;
+
+	// summary and ack of the receiver held by the sender
+	private long peerIncarnation;
+	private long peerEpoch = -1;
+
 	public MessageAErequest (TimestampVector summary, TimestampMatrix ack){
 		this.summary = summary;
 		this.ack = ack;
 	}
+
+	/**
+	 * @param delta entries of summary and ack that changed since the
+	 *        sender's epoch baseEpoch
+	 * @param baseEpoch
+	 */
+	public MessageAErequest (SummaryDelta delta, long baseEpoch){
+		this.delta = delta;
+		this.baseEpoch = baseEpoch;
+	}
+
+	/**
+	 * @param senderId id of the sender
+	 * @param incarnation identifies the sender's execution (epochs restart with it)
+	 * @param epoch identifies the summary and ack sent by this message
+	 * @param peerIncarnation incarnation of the receiver's summary and ack held by the sender
+	 * @param peerEpoch epoch of the receiver's summary and ack held by the sender (-1: none)
+	 */
+	public void setEpochs(String senderId, long incarnation, long epoch, long peerIncarnation, long peerEpoch){
+		this.senderId = senderId;
+		this.incarnation = incarnation;
+		this.epoch = epoch;
+		this.peerIncarnation = peerIncarnation;
+		this.peerEpoch = peerEpoch;
+	}
+
+	/**
+	 * sets the summary and ack rebuilt by the receiver of a delta
+	 * @param summary
+	 * @param ack
+	 */
+	public void expand(TimestampVector summary, TimestampMatrix ack){
+		this.summary = summary;
+		this.ack = ack;
+	}
+
+	public boolean isDelta(){
+		return delta != null;
+	}
+	public SummaryDelta getDelta(){
+		return delta;
+	}
+	public long getBaseEpoch(){
+		return baseEpoch;
+	}
+	public String getSenderId(){
+		return senderId;
+	}
+	public long getIncarnation(){
+		return incarnation;
+	}
+	public long getEpoch(){
+		return epoch;
+	}
+	public long getPeerIncarnation(){
+		return peerIncarnation;
+	}
+	public long getPeerEpoch(){
+		return peerEpoch;
+	}
 	
 	public TimestampVector getSummary(){
 		return this.summary;
@@ -53,7 +128,11 @@ public class MessageAErequest extends Message implements Serializable{
 	
 	@Override
 	public String toString() {
-		 String str = "MessageAErequest [session: "+getSessionNumber()+", summary=" + summary;
+		 String str = "MessageAErequest [session: "+getSessionNumber()+", epoch=" + epoch;
+		 if (delta != null){
+			 str += ", baseEpoch=" + baseEpoch + ", delta=" + delta;
+		 }
+		 str += ", summary=" + summary;
 		 if (ack != null){
 			 str += ", ack=" + ack;
 		 }
@@ -0,0 +1,61 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package recipes_service.communication;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+import recipes_service.data.Recipe;
+
+/**
+ * Merkle reconciliation (see RecipesMerkleTree): recipes of the sender that
+ * are in the leaves whose hashes are different in both servers
+ *
+ */
+public class MessageMerkleBuckets extends Message implements Serializable{
+	private static final long serialVersionUID = -4303871436702519032L;
+	private int[] leaves;
+	private List<Recipe> recipes;
+
+	public MessageMerkleBuckets (int[] leaves, List<Recipe> recipes){
+		this.leaves = leaves;
+		this.recipes = recipes;
+	}
+
+	public int[] getLeaves(){
+		return leaves;
+	}
+
+	public List<Recipe> getRecipes(){
+		return recipes;
+	}
+
+	public MsgType type(){
+		return MsgType.MERKLE_BUCKETS;
+	}
+
+	@Override
+	public String toString() {
+		return "MessageMerkleBuckets [session: "+getSessionNumber()+", leaves=" + Arrays.toString(leaves) + ", recipes=" + recipes + "]";
+	}
+}
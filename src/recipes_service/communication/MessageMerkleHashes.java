@@ -0,0 +1,66 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package recipes_service.communication;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Merkle reconciliation (see RecipesMerkleTree): hashes of some nodes of a
+ * level of the tree of the originator, or (answer of the partner) the nodes
+ * of that level whose hash is different in the tree of the partner
+ * (hashes == null).
+ *
+ */
+public class MessageMerkleHashes extends Message implements Serializable{
+	private static final long serialVersionUID = 2838520127790157410L;
+	private int level;
+	private int[] nodes;
+	private long[] hashes;
+
+	public MessageMerkleHashes (int level, int[] nodes, long[] hashes){
+		this.level = level;
+		this.nodes = nodes;
+		this.hashes = hashes;
+	}
+
+	public int getLevel(){
+		return level;
+	}
+
+	public int[] getNodes(){
+		return nodes;
+	}
+
+	public long[] getHashes(){
+		return hashes;
+	}
+
+	public MsgType type(){
+		return MsgType.MERKLE_HASHES;
+	}
+
+	@Override
+	public String toString() {
+		return "MessageMerkleHashes [session: "+getSessionNumber()+", level=" + level + ", nodes=" + Arrays.toString(nodes) + "]";
+	}
+}
@@ -0,0 +1,52 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package recipes_service.communication;
+
+import java.io.Serializable;
+import java.util.List;
+
+import recipes_service.data.Operation;
+
+/**
+ * Carries a batch of operations, in the order they have to be applied
+ *
+ */
+public class MessageOperationBatch extends Message implements Serializable{
+	private static final long serialVersionUID = -1454873926311625302L;
+	private List<Operation> operations;
+
+	public MessageOperationBatch (List<Operation> operations){
+		this.operations = operations;
+	}
+	
+	public List<Operation> getOperations(){
+		return this.operations;
+	}
+	
+	public MsgType type(){
+		return MsgType.OPERATION_BATCH;
+	}
+	
+	@Override
+	public String toString() {
+		return "MessageOperationBatch [session: "+getSessionNumber()+", operations=" + operations + "]";
+	}
+}
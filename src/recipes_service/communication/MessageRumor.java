@@ -0,0 +1,62 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package recipes_service.communication;
+
+import java.io.Serializable;
+import java.util.List;
+
+import recipes_service.data.Operation;
+
+/**
+ * One-way message that pushes a new operation to a partner outside TSAE
+ * sessions (see RumorMonger), preceded by the previous operations of the
+ * same host that the partner may not have received (consecutive operations,
+ * in order). ttl is the number of hops it can still be forwarded.
+ *
+ */
+public class MessageRumor extends Message implements Serializable{
+	private static final long serialVersionUID = -6790915874321876541L;
+	private List<Operation> operations;
+	private int ttl;
+
+	public MessageRumor (List<Operation> operations, int ttl){
+		this.operations = operations;
+		this.ttl = ttl;
+	}
+
+	public List<Operation> getOperations(){
+		return this.operations;
+	}
+
+	public int getTtl(){
+		return this.ttl;
+	}
+
+	public MsgType type(){
+		return MsgType.RUMOR;
+	}
+
+	@Override
+	public String toString() {
+		return "MessageRumor [ttl=" + ttl + ", operations=" + operations + "]";
+	}
+}
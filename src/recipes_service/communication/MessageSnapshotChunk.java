@@ -0,0 +1,64 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package recipes_service.communication;
+
+import java.io.Serializable;
+
+/**
+ * A chunk of a serialized snapshot of the state of the partner (see
+ * SnapshotTransfer). Chunks are sent in order: index goes from 0 to
+ * count - 1.
+ *
+ */
+public class MessageSnapshotChunk extends Message implements Serializable{
+	private static final long serialVersionUID = 7427516031402245619L;
+	private int index;
+	private int count;
+	private byte[] data;
+
+	public MessageSnapshotChunk (int index, int count, byte[] data){
+		this.index = index;
+		this.count = count;
+		this.data = data;
+	}
+
+	public int getIndex(){
+		return index;
+	}
+
+	public int getCount(){
+		return count;
+	}
+
+	public byte[] getData(){
+		return data;
+	}
+
+	public MsgType type(){
+		return MsgType.SNAPSHOT_CHUNK;
+	}
+
+	@Override
+	public String toString() {
+		return "MessageSnapshotChunk [session: "+getSessionNumber()+", chunk " + (index + 1) + "/" + count + ", " + data.length + " bytes]";
+	}
+}
@@ -0,0 +1,52 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package recipes_service.communication;
+
+
+/**
+ * First message of a TSAE session: a 64-bit digest of the summary and the
+ * ack of the sender. When the digests of both servers are equal the session
+ * ends without exchanging summaries, acks or operations.
+ *
+ */
+public class MessageStateDigest extends Message{
+
+	private static final long serialVersionUID = 5513437128530641093L;
+	private long digest;
+
+	public MessageStateDigest (long digest){
+		this.digest = digest;
+	}
+
+	public long getDigest(){
+		return digest;
+	}
+
+	public MsgType type(){
+		return MsgType.STATE_DIGEST;
+	}
+
+	@Override
+	public String toString() {
+		return "MessageStateDigest [session: "+getSessionNumber()+", digest=" + Long.toHexString(digest) + "]";
+	}
+}
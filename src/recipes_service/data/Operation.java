@@ -20,6 +20,7 @@
 
 package recipes_service.data;
 
+import java.io.ObjectStreamException;
 import java.io.Serializable;
 
 import recipes_service.tsae.data_structures.Timestamp;
@@ -34,6 +35,10 @@ public abstract class Operation implements Serializable{
 	private static final long serialVersionUID = -591830258037667352L;
 	
 	Timestamp timestamp;
+
+	// encoded form of the content of the operation (see BinaryCodec). It is
+	// computed the first time the operation is sent and reused afterwards
+	private transient volatile byte[] encoded;
 	
 	public Operation(Timestamp ts){
 		this.timestamp = ts;
@@ -44,4 +49,24 @@ public abstract class Operation implements Serializable{
 	}
 	
 	public abstract OperationType getType();
+
+	/**
+	 * @return encoded form of the content of the operation, or null if it has
+	 *         not been encoded yet. The array must not be modified
+	 */
+	public byte[] getEncoded() {
+		return encoded;
+	}
+
+	public void setEncoded(byte[] encoded) {
+		this.encoded = encoded;
+	}
+
+	/**
+	 * operations are written to java serialization streams as a
+	 * SerializedOperation, which reuses the encoded form
+	 */
+	protected Object writeReplace() throws ObjectStreamException {
+		return new SerializedOperation(this);
+	}
 }
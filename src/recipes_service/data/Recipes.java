@@ -21,7 +21,9 @@
 package recipes_service.data;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Random;
 import java.util.TreeMap;
 
@@ -56,6 +58,20 @@ public class Recipes implements Serializable{
 		return recipes.containsKey(recipeTitle);
 	}
 	
+	/**
+	 * @return all the recipes, ordered by title
+	 */
+	public synchronized List<Recipe> toList(){
+		return new ArrayList<Recipe>(recipes.values());
+	}
+	
+	/**
+	 * @return number of recipes
+	 */
+	public synchronized int size(){
+		return recipes.size();
+	}
+	
 	public synchronized String getRandomRecipeTitle(){
 		if (recipes.isEmpty())
 			return null;
@@ -0,0 +1,170 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package recipes_service.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import recipes_service.tsae.data_structures.Timestamp;
+
+/**
+ * Merkle tree over a snapshot of the recipes, used to reconcile two servers
+ * whose logs cannot provide the missing operations (see
+ * TSAESessionOriginatorSide).
+ * 
+ * Recipes are distributed by the hash of their title into FANOUT^DEPTH
+ * buckets (the leaves). The hash of a leaf is the sum of the hashes of its
+ * recipes, so it does not depend on the order they were added, and the hash
+ * of an inner node combines the hashes of its FANOUT children. Comparing the
+ * trees level by level finds the buckets that differ with a number of
+ * exchanged hashes proportional to the number of differing buckets.
+ *
+ */
+public class RecipesMerkleTree {
+	public static final int FANOUT = 16;
+	public static final int DEPTH = 3;
+	private static final int LEAVES = (int) Math.pow(FANOUT, DEPTH);
+
+	private final List<Recipe> recipes;
+	// hashes[level][node]: level 0 is the root, level DEPTH the leaves
+	private final long[][] hashes = new long[DEPTH + 1][];
+
+	/**
+	 * @param recipes snapshot of the recipes
+	 */
+	public RecipesMerkleTree(List<Recipe> recipes) {
+		this.recipes = recipes;
+		int width = 1;
+		for (int level = 0; level <= DEPTH; level++) {
+			hashes[level] = new long[width];
+			width *= FANOUT;
+		}
+		long[] leaves = hashes[DEPTH];
+		for (int i = 0; i < recipes.size(); i++) {
+			Recipe recipe = recipes.get(i);
+			leaves[leaf(recipe.getTitle())] += hash(recipe);
+		}
+		for (int level = DEPTH - 1; level >= 0; level--) {
+			for (int node = 0; node < hashes[level].length; node++) {
+				long hash = 0;
+				for (int k = 0; k < FANOUT; k++) {
+					hash = mix(hash ^ hashes[level + 1][node * FANOUT + k]);
+				}
+				hashes[level][node] = hash;
+			}
+		}
+	}
+
+	/**
+	 * @param title
+	 * @return leaf where the recipe with this title is
+	 */
+	public static int leaf(String title) {
+		return (int) ((mix(title.hashCode()) >>> 1) % LEAVES);
+	}
+
+	/**
+	 * @param level
+	 * @param nodes
+	 * @return hashes of the nodes of a level
+	 */
+	public long[] getHashes(int level, int[] nodes) {
+		long[] result = new long[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			result[i] = hashes[level][nodes[i]];
+		}
+		return result;
+	}
+
+	/**
+	 * @param level
+	 * @param nodes
+	 * @param otherHashes hashes of the nodes in another tree
+	 * @return the nodes whose hash is different in this tree
+	 */
+	public int[] diff(int level, int[] nodes, long[] otherHashes) {
+		int count = 0;
+		int[] differing = new int[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			if (hashes[level][nodes[i]] != otherHashes[i]) {
+				differing[count++] = nodes[i];
+			}
+		}
+		int[] result = new int[count];
+		System.arraycopy(differing, 0, result, 0, count);
+		return result;
+	}
+
+	/**
+	 * @param nodes nodes of a level
+	 * @return the children of the nodes (in the next level)
+	 */
+	public static int[] children(int[] nodes) {
+		int[] children = new int[nodes.length * FANOUT];
+		for (int i = 0; i < nodes.length; i++) {
+			for (int k = 0; k < FANOUT; k++) {
+				children[i * FANOUT + k] = nodes[i] * FANOUT + k;
+			}
+		}
+		return children;
+	}
+
+	/**
+	 * @param leaves
+	 * @return the recipes of the snapshot that are in the leaves
+	 */
+	public List<Recipe> getRecipes(int[] leaves) {
+		boolean[] selected = new boolean[LEAVES];
+		for (int i = 0; i < leaves.length; i++) {
+			selected[leaves[i]] = true;
+		}
+		List<Recipe> result = new ArrayList<Recipe>();
+		for (int i = 0; i < recipes.size(); i++) {
+			if (selected[leaf(recipes.get(i).getTitle())]) {
+				result.add(recipes.get(i));
+			}
+		}
+		return result;
+	}
+
+	private static long hash(Recipe recipe) {
+		Timestamp timestamp = recipe.getTimestamp();
+		long hash = mix(recipe.getTitle().hashCode());
+		hash = mix(hash ^ (recipe.getRecipe() == null ? 0 : recipe.getRecipe().hashCode()));
+		hash = mix(hash ^ (recipe.getAuthor() == null ? 0 : recipe.getAuthor().hashCode()));
+		if (timestamp != null) {
+			hash = mix(hash ^ timestamp.getHostid().hashCode());
+			hash = mix(hash ^ timestamp.getSeqnumber());
+		}
+		return hash;
+	}
+
+	/**
+	 * SplitMix64 finalizer
+	 */
+	private static long mix(long z) {
+		z += 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
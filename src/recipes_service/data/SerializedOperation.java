@@ -0,0 +1,74 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package recipes_service.data;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+
+import recipes_service.communication.BinaryCodec;
+import recipes_service.tsae.data_structures.Timestamp;
+
+/**
+ * Form in which an Operation is written to java serialization streams (see
+ * Operation.writeReplace()): its strings are written as the bytes encoded
+ * by BinaryCodec, which are kept in the operation. So an operation sent to
+ * several partners, in several sessions or in rumors is encoded only once
+ * with java serialization too, and a received operation keeps the bytes
+ * it was read from when it is forwarded. Only the timestamps are written
+ * each time (their host ids are shared by handles within a stream).
+ *
+ */
+class SerializedOperation implements Serializable {
+
+	private static final long serialVersionUID = 3904207345513263261L;
+
+	private final boolean add;
+	private final Timestamp timestamp;
+	private final Timestamp recipeTimestamp;
+	private final byte[] strings;
+
+	SerializedOperation(Operation op) throws ObjectStreamException {
+		this.add = (op.getType() == OperationType.ADD);
+		this.timestamp = op.getTimestamp();
+		if (add) {
+			this.recipeTimestamp = ((AddOperation) op).getRecipe().getTimestamp();
+		} else {
+			this.recipeTimestamp = ((RemoveOperation) op).getRecipeTimestamp();
+		}
+		try {
+			this.strings = BinaryCodec.encodedStrings(op);
+		} catch (IOException e) {
+			throw new InvalidObjectException(e.getMessage());
+		}
+	}
+
+	private Object readResolve() throws ObjectStreamException {
+		try {
+			return BinaryCodec.decodeOperation(add ? OperationType.ADD : OperationType.REMOVE, timestamp, strings,
+					recipeTimestamp);
+		} catch (IOException e) {
+			throw new InvalidObjectException(e.getMessage());
+		}
+	}
+}
@@ -151,6 +151,37 @@ public class SendArgsToTestServer {
 			params.put("samplingTime",String.valueOf(properties.getProperty("samplingTime")));
 			params.put("purge",purge);
 			params.put("executionMode",executionMode);
+			params.put("dataDir",properties.getProperty("dataDir"));
+			params.put("segmentSize",properties.getProperty("segmentSize"));
+			params.put("deltaSummaries",properties.getProperty("deltaSummaries"));
+			params.put("wireFormat",properties.getProperty("wireFormat"));
+			params.put("compression",properties.getProperty("compression"));
+			params.put("compressionThreshold",properties.getProperty("compressionThreshold"));
+			params.put("streamingMode",properties.getProperty("streamingMode"));
+			params.put("streamResetObjects",properties.getProperty("streamResetObjects"));
+			params.put("streamResetBytes",properties.getProperty("streamResetBytes"));
+			params.put("batchSize",properties.getProperty("batchSize"));
+			params.put("propagationMaxDelay",properties.getProperty("propagationMaxDelay"));
+			params.put("propagationMaxBatch",properties.getProperty("propagationMaxBatch"));
+			params.put("maxParallelSessions",properties.getProperty("maxParallelSessions"));
+			params.put("sessionTimeout",properties.getProperty("sessionTimeout"));
+			params.put("adaptiveSessionPeriod",properties.getProperty("adaptiveSessionPeriod"));
+			params.put("sessionPeriodMin",properties.getProperty("sessionPeriodMin"));
+			params.put("sessionPeriodMax",properties.getProperty("sessionPeriodMax"));
+			params.put("snapshotTransfer",properties.getProperty("snapshotTransfer"));
+			params.put("snapshotThreshold",properties.getProperty("snapshotThreshold"));
+			params.put("merkleReconciliation",properties.getProperty("merkleReconciliation"));
+			params.put("rumorFanout",properties.getProperty("rumorFanout"));
+			params.put("rumorTtl",properties.getProperty("rumorTtl"));
+			params.put("holdbackSize",properties.getProperty("holdbackSize"));
+			params.put("applyLanes",properties.getProperty("applyLanes"));
+			params.put("partnerSelection",properties.getProperty("partnerSelection"));
+			params.put("digestPrecheck",properties.getProperty("digestPrecheck"));
+			params.put("connectionPool",properties.getProperty("connectionPool"));
+			params.put("connectionIdleTimeout",properties.getProperty("connectionIdleTimeout"));
+			params.put("sessionThreads",properties.getProperty("sessionThreads"));
+			params.put("partnerSide",properties.getProperty("partnerSide"));
+			params.put("maxPartnerConnections",properties.getProperty("maxPartnerConnections"));
 
 			//params.put("coordinatorLSimParameters", paramsServer);
 			ExperimentData experimentData = new ExperimentData();
@@ -0,0 +1,135 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package recipes_service.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import recipes_service.communication.MessageAErequest;
+import recipes_service.tsae.data_structures.Timestamp;
+import recipes_service.tsae.data_structures.TimestampMatrix;
+import recipes_service.tsae.data_structures.TimestampVector;
+import recipes_service.tsae.sessions.SummaryBaselines;
+
+/**
+ * Measures the bytes of the AE request sent per TSAE session with full and
+ * with delta-encoded summary and ack, for different numbers of servers.
+ * 
+ * Usage: SummaryExchangeBenchmark [sessions] [operations per session]
+ *
+ */
+public class SummaryExchangeBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int sessions = (args.length > 0 ? Integer.parseInt(args[0]) : 200);
+		int opsPerSession = (args.length > 1 ? Integer.parseInt(args[1]) : 3);
+
+		System.out.println("servers\tfull (bytes/session)\tdelta (bytes/session)\tratio");
+		int[] sizes = {5, 10, 20, 50, 100};
+		for (int n : sizes) {
+			long full = run(n, sessions, opsPerSession, false);
+			long delta = run(n, sessions, opsPerSession, true);
+			System.out.println(n + "\t" + full / sessions + "\t" + delta / sessions + "\t"
+					+ String.format("%.2f", (double) delta / full));
+		}
+	}
+
+	/**
+	 * simulates sessions between two servers (a and b) while the other servers
+	 * issue operations
+	 * 
+	 * @return total bytes of the AE requests sent by a
+	 */
+	private static long run(int n, int sessions, int opsPerSession, boolean enabled) throws IOException,
+			ClassNotFoundException {
+		List<String> ids = new ArrayList<String>();
+		for (int i = 0; i < n; i++) {
+			ids.add("group@10.0.0." + i + ":" + (20000 + i));
+		}
+		String a = ids.get(0);
+		String b = ids.get(1);
+		SummaryBaselines baselinesA = new SummaryBaselines(a, ids, enabled);
+		SummaryBaselines baselinesB = new SummaryBaselines(b, ids, enabled);
+
+		Random rnd = new Random(n);
+		long[] seqs = new long[n];
+		TimestampVector summaryA = new TimestampVector(ids);
+		TimestampMatrix ackA = new TimestampMatrix(ids);
+		TimestampVector summaryB = new TimestampVector(ids);
+		TimestampMatrix ackB = new TimestampMatrix(ids);
+
+		long bytes = 0;
+		for (int s = 0; s < sessions; s++) {
+			for (int k = 0; k < opsPerSession; k++) {
+				int host = rnd.nextInt(n);
+				summaryA.updateTimestamp(new Timestamp(ids.get(host), seqs[host]++));
+				// a few rows of the ack are learnt from other sessions
+				int node = 2 + rnd.nextInt(n - 2);
+				TimestampVector row = new TimestampVector(ids);
+				row.updateMax(summaryA);
+				ackA.update(ids.get(node), row);
+			}
+			ackA.update(a, summaryA);
+
+			// a -> b
+			MessageAErequest msg = baselinesA.newRequest(b, summaryA.clone(), ackA.clone());
+			byte[] data = serialize(msg);
+			bytes += data.length;
+			MessageAErequest received = (MessageAErequest) deserialize(data);
+			baselinesB.expand(received);
+			check(received, summaryA, ackA);
+
+			// b -> a
+			ackB.update(b, summaryB);
+			received = (MessageAErequest) deserialize(serialize(baselinesB.newRequest(a, summaryB.clone(),
+					ackB.clone())));
+			baselinesA.expand(received);
+			summaryB.updateMax(summaryA);
+			ackB.updateMax(ackA);
+		}
+		return bytes;
+	}
+
+	private static void check(MessageAErequest received, TimestampVector summary, TimestampMatrix ack) {
+		if (!received.getSummary().equals(summary) || !received.getAck().equals(ack)) {
+			throw new IllegalStateException("rebuilt summary or ack differs from the sent one");
+		}
+	}
+
+	private static byte[] serialize(Object obj) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(obj);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static Object deserialize(byte[] data) throws IOException, ClassNotFoundException {
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data));
+		return in.readObject();
+	}
+}
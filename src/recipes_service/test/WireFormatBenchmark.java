@@ -0,0 +1,187 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package recipes_service.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import communication.ObjectInputStream_DS;
+import communication.ObjectOutputStream_DS;
+import recipes_service.activity_simulation.SimulationData;
+import recipes_service.communication.Message;
+import recipes_service.communication.MessageAErequest;
+import recipes_service.communication.MessageEndTSAE;
+import recipes_service.communication.MessageOperation;
+import recipes_service.communication.MessageOperationBatch;
+import recipes_service.communication.WireFormat;
+import recipes_service.data.AddOperation;
+import recipes_service.data.Operation;
+import recipes_service.data.Recipe;
+import recipes_service.data.RemoveOperation;
+import recipes_service.tsae.data_structures.Timestamp;
+import recipes_service.tsae.data_structures.TimestampMatrix;
+import recipes_service.tsae.data_structures.TimestampVector;
+
+/**
+ * Compares java serialization and BinaryCodec on the messages of a TSAE
+ * session (an AE request, the operations, one per message or in batches, and
+ * the end message) written
+ * through ObjectOutputStream_DS and read through ObjectInputStream_DS.
+ * 
+ * Usage: WireFormatBenchmark [servers] [operations per session] [iterations] [batch size]
+ *
+ */
+public class WireFormatBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int n = (args.length > 0 ? Integer.parseInt(args[0]) : 20);
+		int opsPerSession = (args.length > 1 ? Integer.parseInt(args[1]) : 100);
+		int iterations = (args.length > 2 ? Integer.parseInt(args[2]) : 2000);
+		int[] batchSizes = (args.length > 3 ? new int[] {Integer.parseInt(args[3])} : new int[] {1, 64});
+		SimulationData.getInstance().connect();
+		for (int batchSize : batchSizes) {
+			run(n, opsPerSession, iterations, batchSize);
+		}
+	}
+
+	private static void run(int n, int opsPerSession, int iterations, int batchSize) throws Exception {
+		List<Message> session = session(n, opsPerSession, batchSize);
+
+		System.out.println("servers: " + n + ", operations per session: " + opsPerSession + ", batch size: "
+				+ batchSize);
+		System.out.println("format\tbytes/session\tencode (us/session)\tdecode (us/session)");
+		for (WireFormat format : WireFormat.values()) {
+			SimulationData.getInstance().setWireFormat(format);
+			byte[] data = null;
+			// warm up
+			for (int i = 0; i < iterations / 4; i++) {
+				data = write(session);
+				read(data, session.size());
+			}
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				data = write(session);
+			}
+			long encode = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				read(data, session.size());
+			}
+			long decode = System.nanoTime() - start;
+			check(session, read(data, session.size()));
+			System.out.println(format + "\t" + data.length + "\t" + encode / iterations / 1000 + "\t"
+					+ decode / iterations / 1000);
+		}
+	}
+
+	private static List<Message> session(int n, int opsPerSession, int batchSize) {
+		List<String> ids = new ArrayList<String>();
+		for (int i = 0; i < n; i++) {
+			ids.add("group@10.0.0." + i + ":" + (20000 + i));
+		}
+		Random rnd = new Random(0);
+		TimestampVector summary = new TimestampVector(ids);
+		TimestampMatrix ack = new TimestampMatrix(ids);
+		for (int i = 0; i < n; i++) {
+			summary.updateTimestamp(new Timestamp(ids.get(i), rnd.nextInt(10000)));
+		}
+		for (int i = 0; i < n; i++) {
+			ack.update(ids.get(i), summary);
+		}
+
+		List<Message> session = new ArrayList<Message>();
+		MessageAErequest ae = new MessageAErequest(summary, ack);
+		ae.setEpochs(ids.get(0), rnd.nextLong(), 1, 0, -1);
+		session.add(ae);
+		List<Operation> batch = new ArrayList<Operation>();
+		for (int k = 0; k < opsPerSession; k++) {
+			String host = ids.get(rnd.nextInt(n));
+			Timestamp ts = new Timestamp(host, 10000 + k);
+			Operation op;
+			if (rnd.nextInt(10) < 8) {
+				op = new AddOperation(new Recipe("Recipe " + rnd.nextInt(100000), "Mix the ingredients and bake for "
+						+ rnd.nextInt(60) + " minutes", "author" + rnd.nextInt(50), ts), ts);
+			} else {
+				op = new RemoveOperation("Recipe " + rnd.nextInt(100000), new Timestamp(host, k), ts);
+			}
+			if (batchSize <= 1) {
+				session.add(new MessageOperation(op));
+			} else {
+				batch.add(op);
+				if (batch.size() == batchSize || k == opsPerSession - 1) {
+					session.add(new MessageOperationBatch(batch));
+					batch = new ArrayList<Operation>();
+				}
+			}
+		}
+		session.add(new MessageEndTSAE());
+		for (Message msg : session) {
+			msg.setSessionNumber(1);
+		}
+		return session;
+	}
+
+	private static List<Operation> operations(Message msg) {
+		if (msg instanceof MessageOperationBatch) {
+			return ((MessageOperationBatch) msg).getOperations();
+		}
+		List<Operation> ops = new ArrayList<Operation>();
+		ops.add(((MessageOperation) msg).getOperation());
+		return ops;
+	}
+
+	private static byte[] write(List<Message> session) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream_DS out = new ObjectOutputStream_DS(bytes);
+		for (Message msg : session) {
+			out.writeObject(msg);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static List<Message> read(byte[] data, int count) throws IOException, ClassNotFoundException {
+		ObjectInputStream_DS in = new ObjectInputStream_DS(new ByteArrayInputStream(data));
+		List<Message> session = new ArrayList<Message>(count);
+		for (int i = 0; i < count; i++) {
+			session.add((Message) in.readObject());
+		}
+		return session;
+	}
+
+	private static void check(List<Message> sent, List<Message> received) {
+		MessageAErequest ae = (MessageAErequest) sent.get(0);
+		MessageAErequest receivedAe = (MessageAErequest) received.get(0);
+		boolean ok = ae.getSummary().equals(receivedAe.getSummary()) && ae.getAck().equals(receivedAe.getAck())
+				&& ae.getEpoch() == receivedAe.getEpoch() && ae.getSenderId().equals(receivedAe.getSenderId());
+		for (int i = 1; i < sent.size() - 1; i++) {
+			ok &= operations(sent.get(i)).equals(operations(received.get(i)));
+			ok &= received.get(i).getSessionNumber() == sent.get(i).getSessionNumber();
+		}
+		ok &= received.get(sent.size() - 1) instanceof MessageEndTSAE;
+		if (!ok) {
+			throw new IllegalStateException("decoded messages differ from the encoded ones");
+		}
+	}
+}
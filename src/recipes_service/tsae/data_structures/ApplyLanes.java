@@ -0,0 +1,154 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package recipes_service.tsae.data_structures;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import recipes_service.data.Operation;
+
+/**
+ * Inserts the operations received from partners into the log with a lane
+ * per origin host. The log of each host is independent (its HostLog and
+ * its segments in the persistent store are locked separately), so the
+ * lanes of a large batch with operations of several hosts run in parallel
+ * in a shared pool; the calling thread runs one of them and waits for the
+ * rest. Small batches, or batches of a single host, are inserted by the
+ * calling thread.
+ * 
+ * Lanes only insert into the log, so they only pay off when the log is
+ * persisted (serializing the operations for the store is the costly part;
+ * inserting into a HostLog is an array copy): ServerData uses a single
+ * lane otherwise. The operations are applied to the recipes afterwards, in
+ * a single pass under the Recipes lock, where the only cross-host order
+ * that matters (a remove and the add it removes) is solved by the
+ * tombstones.
+ *
+ */
+public class ApplyLanes {
+	// minimum number of operations of a batch to use several lanes
+	static final int MIN_PARALLEL_OPERATIONS = 256;
+
+	private final Log log;
+	private final int lanes;
+	private final ExecutorService executor;
+
+	/**
+	 * @param log
+	 * @param lanes maximum number of lanes running at the same time (0: number
+	 *        of processors; 1: operations are inserted by the calling thread)
+	 */
+	public ApplyLanes(Log log, int lanes) {
+		this.log = log;
+		this.lanes = (lanes > 0) ? lanes : Runtime.getRuntime().availableProcessors();
+		if (this.lanes > 1) {
+			// the calling thread runs a lane too
+			this.executor = Executors.newFixedThreadPool(this.lanes - 1, new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger(0);
+
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "TSAEApplyLane-" + count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		} else {
+			this.executor = null;
+		}
+	}
+
+	/**
+	 * @param runs operations of each host, in order
+	 * @return operations of each host inserted into the log, in order
+	 */
+	public Map<String, List<Operation>> addAll(Map<String, List<Operation>> runs) {
+		Map<String, List<Operation>> added = new HashMap<String, List<Operation>>();
+		List<String> hosts = new ArrayList<String>(runs.size());
+		int operations = 0;
+		for (Map.Entry<String, List<Operation>> entry : runs.entrySet()) {
+			if (!entry.getValue().isEmpty()) {
+				hosts.add(entry.getKey());
+				operations += entry.getValue().size();
+			}
+		}
+		if (executor == null || hosts.size() < 2 || operations < MIN_PARALLEL_OPERATIONS) {
+			for (String host : hosts) {
+				added.put(host, log.addAll(host, runs.get(host)));
+			}
+			return added;
+		}
+
+		List<Future<List<Operation>>> futures = new ArrayList<Future<List<Operation>>>(hosts.size() - 1);
+		for (int i = 1; i < hosts.size(); i++) {
+			final String host = hosts.get(i);
+			final List<Operation> run = runs.get(host);
+			futures.add(executor.submit(new Callable<List<Operation>>() {
+				public List<Operation> call() {
+					return log.addAll(host, run);
+				}
+			}));
+		}
+		added.put(hosts.get(0), log.addAll(hosts.get(0), runs.get(hosts.get(0))));
+		// the result of every lane is needed (and the lanes can not be
+		// cancelled half way), so interruptions are deferred
+		boolean interrupted = false;
+		for (int i = 0; i < futures.size(); i++) {
+			while (true) {
+				try {
+					added.put(hosts.get(i + 1), futures.get(i).get());
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					throw new IllegalStateException("Insertion of the operations of " + hosts.get(i + 1) + " failed",
+							e.getCause());
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		return added;
+	}
+
+	/**
+	 * @return maximum number of lanes running at the same time
+	 */
+	public int getLanes() {
+		return lanes;
+	}
+
+	public void shutdown() {
+		if (executor != null) {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,215 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package recipes_service.tsae.data_structures;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import recipes_service.data.Operation;
+
+/**
+ * Holdback (reorder) buffer in front of the Log for the operations
+ * received from partners. An operation can only be inserted into the log
+ * when it is the next one of its host (the one following the summary);
+ * operations received before the ones preceding them are parked here and
+ * released, as a contiguous run, once the gap is filled. So operations can
+ * be received out of order (e.g. from several partners at the same time)
+ * without being dropped and without the summary covering operations that
+ * have not been received.
+ * 
+ * At most maxOperations are parked: when the buffer is full the operation
+ * with the highest sequence number of the host with most parked operations
+ * (the furthest from being released) is evicted. Evicting is safe: the
+ * summary does not cover evicted operations, so partners send them again.
+ * A TSAE session only merges the partner's summary, which may cover parked
+ * or evicted operations, once all the operations the partner has in its
+ * log have been received; if the logs can not provide some of them the
+ * recipes have to be reconciled first, or the session fails (see
+ * ServerData.hasGap). Parked operations the summary covers are discarded.
+ *
+ */
+public class HoldbackBuffer {
+	private final int maxOperations;
+
+	// parked operations of each host, by sequence number
+	private final Map<String, TreeMap<Long, Operation>> parked = new HashMap<String, TreeMap<Long, Operation>>();
+	private int size = 0;
+
+	// statistics
+	private long parkedTotal = 0;
+	private long evicted = 0;
+
+	/**
+	 * @param maxOperations maximum number of parked operations
+	 */
+	public HoldbackBuffer(int maxOperations) {
+		this.maxOperations = maxOperations;
+	}
+
+	/**
+	 * The operations that continue the log (usually all of them: a partner
+	 * sends the operations of each host in order) go straight to the run
+	 * without being parked.
+	 * 
+	 * @param host
+	 * @param ops operations of host
+	 * @param next sequence number of the next operation of host
+	 * @return the operations of host that can be inserted into the log (the
+	 *         run of consecutive operations starting at next), in order. The
+	 *         newer ones are parked
+	 */
+	public synchronized List<Operation> offer(String host, List<Operation> ops, long next) {
+		List<Operation> run = new ArrayList<Operation>();
+		int i = 0;
+		for (; i < ops.size(); i++) {
+			long seq = ops.get(i).getTimestamp().getSeqnumber();
+			if (seq > next) {
+				break;
+			}
+			if (seq == next) {
+				run.add(ops.get(i));
+				next++;
+			}
+		}
+		TreeMap<Long, Operation> hostOps = parked.get(host);
+		List<Long> offered = null;
+		for (; i < ops.size(); i++) {
+			long seq = ops.get(i).getTimestamp().getSeqnumber();
+			if (seq < next) {
+				continue;
+			}
+			if (hostOps == null) {
+				hostOps = new TreeMap<Long, Operation>();
+				parked.put(host, hostOps);
+			}
+			if (hostOps.put(seq, ops.get(i)) == null) {
+				size++;
+				if (offered == null) {
+					offered = new ArrayList<Long>();
+				}
+				offered.add(seq);
+			}
+		}
+		if (hostOps == null) {
+			return run;
+		}
+		run.addAll(release(hostOps, next));
+		if (offered != null) {
+			// only the ones left behind have been parked
+			for (int j = 0; j < offered.size(); j++) {
+				if (hostOps.containsKey(offered.get(j))) {
+					parkedTotal++;
+				}
+			}
+		}
+		while (size > maxOperations) {
+			evict();
+		}
+		return run;
+	}
+
+	/**
+	 * @param host
+	 * @param next sequence number of the next operation of host
+	 * @return the parked operations of host that can be inserted into the log
+	 *         (the run of consecutive operations starting at next), in order
+	 */
+	public synchronized List<Operation> release(String host, long next) {
+		TreeMap<Long, Operation> hostOps = parked.get(host);
+		if (hostOps == null) {
+			return new ArrayList<Operation>(0);
+		}
+		return release(hostOps, next);
+	}
+
+	/**
+	 * @return hosts with parked operations
+	 */
+	public synchronized List<String> getHosts() {
+		List<String> hosts = new ArrayList<String>();
+		for (Map.Entry<String, TreeMap<Long, Operation>> entry : parked.entrySet()) {
+			if (!entry.getValue().isEmpty()) {
+				hosts.add(entry.getKey());
+			}
+		}
+		return hosts;
+	}
+
+	/**
+	 * discards the operations older than next and removes the run starting at next
+	 */
+	private List<Operation> release(TreeMap<Long, Operation> hostOps, long next) {
+		while (!hostOps.isEmpty() && hostOps.firstKey() < next) {
+			hostOps.pollFirstEntry();
+			size--;
+		}
+		List<Operation> run = new ArrayList<Operation>();
+		while (!hostOps.isEmpty() && hostOps.firstKey() == next) {
+			run.add(hostOps.pollFirstEntry().getValue());
+			size--;
+			next++;
+		}
+		return run;
+	}
+
+	private void evict() {
+		TreeMap<Long, Operation> largest = null;
+		for (TreeMap<Long, Operation> hostOps : parked.values()) {
+			if (largest == null || hostOps.size() > largest.size()) {
+				largest = hostOps;
+			}
+		}
+		largest.pollLastEntry();
+		size--;
+		evicted++;
+	}
+
+	/**
+	 * @return number of parked operations
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * @return number of operations that have been parked (received before
+	 *         the ones preceding them)
+	 */
+	public synchronized long getParkedTotal() {
+		return parkedTotal;
+	}
+
+	/**
+	 * @return number of operations evicted because the buffer was full
+	 */
+	public synchronized long getEvicted() {
+		return evicted;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "HoldbackBuffer [parked=" + size + ", parked in total=" + parkedTotal + ", evicted=" + evicted + "]";
+	}
+}
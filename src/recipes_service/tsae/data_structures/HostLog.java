@@ -0,0 +1,257 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package recipes_service.tsae.data_structures;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import recipes_service.communication.BinaryCodec;
+import recipes_service.data.Operation;
+
+/**
+ * Append-only list of the operations issued by a single host.
+ * Operations are kept ordered by sequence number, together with a
+ * parallel array of sequence numbers, so the position of the first
+ * operation newer than a given timestamp is found by binary search.
+ * 
+ * Purge drops a prefix of the list by moving the head index forward;
+ * the array is compacted only when more than half of it is free, so
+ * purging costs O(purged) amortized.
+ *
+ */
+public class HostLog implements Serializable {
+
+	private static final long serialVersionUID = 2207145862399384153L;
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private transient Operation[] ops = new Operation[INITIAL_CAPACITY];
+	private transient long[] seqs = new long[INITIAL_CAPACITY];
+	private transient int head = 0;
+	private transient int size = 0;
+
+	// timestamp of the last operation ever appended (survives purge)
+	private Timestamp lastTimestamp = null;
+
+	/**
+	 * appends op at the end of the log. The sequence number of op has to be
+	 * greater than the sequence number of the last operation appended to the
+	 * log (even if it has already been purged).
+	 *
+	 * @param op
+	 * @return true if op is appended, false otherwise.
+	 */
+	public synchronized boolean append(Operation op) {
+		if (lastTimestamp != null && op.getTimestamp().compare(lastTimestamp) <= 0) {
+			return false;
+		}
+		if (size == ops.length) {
+			grow();
+		}
+		ops[size] = op;
+		seqs[size] = op.getTimestamp().getSeqnumber();
+		size++;
+		lastTimestamp = op.getTimestamp();
+		return true;
+	}
+
+	/**
+	 * @return the timestamp of the last operation appended to the log, or null
+	 *         if no operation has been appended
+	 */
+	public synchronized Timestamp getLastTimestamp() {
+		return lastTimestamp;
+	}
+
+	/**
+	 * @return number of operations currently stored (purged ones excluded)
+	 */
+	public synchronized int size() {
+		return size - head;
+	}
+
+	/**
+	 * Removes the prefix of operations with a sequence number lower than or
+	 * equal to seq.
+	 * 
+	 * @param seq
+	 * @return the number of removed operations and their encoded size
+	 */
+	public synchronized PurgeResult purgeUpTo(long seq) {
+		int end = firstIndexAfter(seq);
+		long bytes = 0;
+		for (int i = head; i < end; i++) {
+			bytes += BinaryCodec.encodedSize(ops[i]);
+			ops[i] = null;
+		}
+		PurgeResult purged = new PurgeResult(end - head, bytes);
+		head = end;
+		if (head == size) {
+			head = 0;
+			size = 0;
+		} else if (head > ops.length / 2) {
+			compact();
+		}
+		return purged;
+	}
+
+	/**
+	 * @param seq
+	 * @return the operations with a sequence number greater than seq, in order
+	 */
+	public synchronized List<Operation> listAfter(long seq) {
+		int first = firstIndexAfter(seq);
+		List<Operation> newer = new ArrayList<Operation>(size - first);
+		for (int i = first; i < size; i++) {
+			newer.add(ops[i]);
+		}
+		return newer;
+	}
+
+	/**
+	 * @param seq
+	 * @return sequence number of the first stored operation with a sequence
+	 *         number greater than seq (NULL_TIMESTAMP_SEQ_NUMBER if there is none)
+	 */
+	public synchronized long firstSeqAfter(long seq) {
+		int first = firstIndexAfter(seq);
+		return (first < size) ? seqs[first] : Timestamp.NULL_TIMESTAMP_SEQ_NUMBER;
+	}
+
+	/**
+	 * @return all the operations in the log, in order
+	 */
+	public synchronized List<Operation> toList() {
+		return listAfter(Long.MIN_VALUE);
+	}
+
+	/**
+	 * Binary search over the sequence numbers.
+	 *
+	 * @param seq
+	 * @return index of the first stored operation with a sequence number
+	 *         greater than seq (size if there is none)
+	 */
+	private int firstIndexAfter(long seq) {
+		int low = head;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (seqs[mid] <= seq) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private void grow() {
+		if (head > 0) {
+			compact();
+			if (size < ops.length) {
+				return;
+			}
+		}
+		int capacity = ops.length * 2;
+		Operation[] newOps = new Operation[capacity];
+		long[] newSeqs = new long[capacity];
+		System.arraycopy(ops, 0, newOps, 0, size);
+		System.arraycopy(seqs, 0, newSeqs, 0, size);
+		ops = newOps;
+		seqs = newSeqs;
+	}
+
+	/**
+	 * moves the stored operations to the beginning of the arrays
+	 */
+	private void compact() {
+		int n = size - head;
+		System.arraycopy(ops, head, ops, 0, n);
+		System.arraycopy(seqs, head, seqs, 0, n);
+		for (int i = n; i < size; i++) {
+			ops[i] = null;
+		}
+		head = 0;
+		size = n;
+	}
+
+	/**
+	 * only the stored operations are serialized (not the spare capacity)
+	 */
+	private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeInt(size - head);
+		for (int i = head; i < size; i++) {
+			out.writeObject(ops[i]);
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		int n = in.readInt();
+		int capacity = Math.max(INITIAL_CAPACITY, n);
+		ops = new Operation[capacity];
+		seqs = new long[capacity];
+		for (int i = 0; i < n; i++) {
+			ops[i] = (Operation) in.readObject();
+			seqs[i] = ops[i].getTimestamp().getSeqnumber();
+		}
+		size = n;
+	}
+
+	/**
+	 * equals
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		} else if (obj == null) {
+			return false;
+		} else if (getClass() != obj.getClass()) {
+			return false;
+		}
+		// compare snapshots to avoid holding both locks at the same time
+		return toList().equals(((HostLog) obj).toList());
+	}
+
+	@Override
+	public int hashCode() {
+		return toList().hashCode();
+	}
+
+	/**
+	 * toString
+	 */
+	@Override
+	public synchronized String toString() {
+		StringBuilder name = new StringBuilder();
+		for (int i = head; i < size; i++) {
+			name.append(ops[i].toString()).append('\n');
+		}
+		return name.toString();
+	}
+}
@@ -20,11 +20,14 @@
 
 package recipes_service.tsae.data_structures;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -33,6 +36,7 @@ import edu.uoc.dpcs.lsim.LSimFactory;
 import edu.uoc.dpcs.lsim.logger.LoggerManager.Level;
 import lsim.worker.LSimWorker;
 import recipes_service.data.Operation;
+import recipes_service.tsae.persistence.PersistentLogStore;
 
 /**
  * @author Joan-Manuel Marques, Daniel Lázaro Iglesias December 2012
@@ -46,14 +50,18 @@ public class Log implements Serializable {
 	/**
 	 * This class implements a log, that stores the operations received by a
 	 * client. They are stored in a ConcurrentHashMap (a hash table), that
-	 * stores a list of operations for each member of the group.
+	 * stores a HostLog (an append-only list of operations indexed by sequence
+	 * number) for each member of the group.
 	 */
-	private ConcurrentHashMap<String, List<Operation>> log = new ConcurrentHashMap<String, List<Operation>>();
+	private ConcurrentHashMap<String, HostLog> log = new ConcurrentHashMap<String, HostLog>();
+
+	// durable copy of the log (null when the log is only kept in memory)
+	private transient PersistentLogStore store = null;
 
 	public Log(List<String> participants) {
 		// create an empty log
 		for (Iterator<String> it = participants.iterator(); it.hasNext();) {
-			log.put(it.next(), new Vector<Operation>());
+			log.put(it.next(), new HostLog());
 		}
 	}
 
@@ -72,33 +80,76 @@ public class Log implements Serializable {
 		Timestamp opTimestamp = op.getTimestamp();
 		String opHostId = opTimestamp.getHostid();
 
-		// Retrieve the list of Operations that are stored in the log for that
-		// HostId
-		List<Operation> opHostIdOperations = this.log.get(opHostId);
-
-		// Retrieve the last timestamp in the list of Operations
-		Timestamp lastTimestampHostId;
+		// Retrieve the operations that are stored in the log for that HostId
+		HostLog opHostIdOperations = this.log.get(opHostId);
 
 		if (opHostIdOperations == null) {
-			lastTimestampHostId = null;
-		} else if (opHostIdOperations.isEmpty()) {
-			lastTimestampHostId = null;
-		} else {
-			lastTimestampHostId = opHostIdOperations.get(opHostIdOperations.size() - 1).getTimestamp();
+			lsim.log(Level.ERROR, "Insertion of operation " + op + " failed. Unknown host " + opHostId);
+			return false;
 		}
 
-		// Compare both timestamps. If the incoming operation timestamp is
-		// older, we add the operation into the logs
-		long tsDiff = opTimestamp.compare(lastTimestampHostId);
+		// The HostLog only appends operations newer than its last one.
+		// The store is updated while holding the HostLog lock so that
+		// operations of a host are stored in the same order
+		synchronized (opHostIdOperations) {
+			if (!opTimestamp.isNullTimestamp() && opHostIdOperations.append(op)) {
+				lsim.log(Level.DEBUG, "Inserting operation: " + op);
+				if (store != null) {
+					store.append(op);
+				}
+				return true;
+			}
+		}
+		lsim.log(Level.ERROR, "Insertion of operations " + op + " failed. Received older operation");
+		return false;
+	}
 
-		if (tsDiff > 0 || (lastTimestampHostId == null && tsDiff == 0)) {
-			lsim.log(Level.DEBUG, "Inserting operation: " + op);
-			this.log.get(opHostId).add(op);
-			return true;
-		} else {
-			lsim.log(Level.ERROR, "Insertion of operations " + op + " failed. Received older operation");
-			return false;
+	/**
+	 * inserts operations of a single host into the log holding the lock of
+	 * its HostLog once. Operations have to be ordered by sequence number;
+	 * the ones that are not newer than the last operation of the host are
+	 * not inserted.
+	 * 
+	 * @param hostId
+	 * @param ops
+	 * @return the operations inserted, in order
+	 */
+	public List<Operation> addAll(String hostId, List<Operation> ops) {
+		HostLog hostLog = this.log.get(hostId);
+		if (hostLog == null) {
+			lsim.log(Level.ERROR, "Insertion of " + ops.size() + " operations failed. Unknown host " + hostId);
+			return Collections.emptyList();
 		}
+		List<Operation> added = new ArrayList<Operation>(ops.size());
+		synchronized (hostLog) {
+			for (int i = 0; i < ops.size(); i++) {
+				Operation op = ops.get(i);
+				if (!op.getTimestamp().isNullTimestamp() && hostLog.append(op)) {
+					if (store != null) {
+						store.append(op);
+					}
+					added.add(op);
+				}
+			}
+		}
+		lsim.log(Level.DEBUG, "Inserted " + added.size() + " of " + ops.size() + " operations of " + hostId);
+		return added;
+	}
+
+	/**
+	 * Loads into the log the operations kept by store and, from now on, stores
+	 * into it every operation added to the log.
+	 * 
+	 * @param store
+	 */
+	public void restore(PersistentLogStore store) {
+		for (String node : this.log.keySet()) {
+			HostLog hostLog = this.log.get(node);
+			for (Operation op : store.read(node, Long.MIN_VALUE)) {
+				hostLog.append(op);
+			}
+		}
+		this.store = store;
 	}
 
 	/**
@@ -114,33 +165,88 @@ public class Log implements Serializable {
 		// Create an empty list using the Vector class that is already imported
 		List<Operation> missingOps = new Vector<Operation>();
 
-		// Iterate through the operations in the log. For each one, its
-		// timestamp is compared with the one in the summary
-		// If the stored operation is newer, it is added to the list of missing
-		// operations
+		// For each host, the summary tells the last operation seen by the
+		// proprietary of the summary. The HostLog jumps straight to the first
+		// newer operation, so the cost is proportional to the missing
+		// operations and not to the size of the log
 
 		for (String node : this.log.keySet()) {
-			Timestamp summaryTs = sum.getLast(node);
-			List<Operation> operations = this.log.get(node);
-
-			for (Operation op : operations) {
-				if (op.getTimestamp().compare(summaryTs) > 0) {
-					missingOps.add(op);
-				}
-			}
+			missingOps.addAll(this.log.get(node).listAfter(sum.getLastSeq(node)));
 		}
 
 		return missingOps;
 	}
 
+	/**
+	 * @param node
+	 * @param seq
+	 * @return operations issued by node with a sequence number greater than
+	 *         seq, in order
+	 */
+	public List<Operation> listNewer(String node, long seq) {
+		HostLog hostLog = this.log.get(node);
+		if (hostLog == null) {
+			return new Vector<Operation>();
+		}
+		return hostLog.listAfter(seq);
+	}
+
+	/**
+	 * @param node
+	 * @param seq
+	 * @return sequence number of the first operation issued by node with a
+	 *         sequence number greater than seq that is in the log
+	 *         (NULL_TIMESTAMP_SEQ_NUMBER if there is none)
+	 */
+	public long firstSeqNewer(String node, long seq) {
+		HostLog hostLog = this.log.get(node);
+		if (hostLog == null) {
+			return Timestamp.NULL_TIMESTAMP_SEQ_NUMBER;
+		}
+		return hostLog.firstSeqAfter(seq);
+	}
+
 	/**
 	 * Removes from the log the operations that have been acknowledged by all
 	 * the members of the group, according to the provided ackSummary.
 	 * 
 	 * @param ack:
 	 *            ackSummary.
+	 * @return number of purged operations and bytes reclaimed
+	 */
+	public PurgeResult purgeLog(TimestampMatrix ack) {
+		TimestampVector min = (ack == null) ? null : ack.minTimestampVector();
+		if (min == null) {
+			return new PurgeResult(0, 0);
+		}
+
+		// for each host drop the stable prefix: operations seen by everybody
+		int purged = 0;
+		long reclaimedBytes = 0;
+		for (String node : this.log.keySet()) {
+			Timestamp stable = min.getLast(node);
+			if (stable != null && !stable.isNullTimestamp()) {
+				PurgeResult hostPurged = this.log.get(node).purgeUpTo(stable.getSeqnumber());
+				purged += hostPurged.getPurgedOperations();
+				reclaimedBytes += hostPurged.getReclaimedBytes();
+				if (store != null) {
+					store.purgeUpTo(node, stable.getSeqnumber());
+				}
+			}
+		}
+
+		if (purged > 0) {
+			lsim.log(Level.DEBUG, "Purged " + purged + " operations from the log (" + reclaimedBytes + " bytes)");
+		}
+		return new PurgeResult(purged, reclaimedBytes);
+	}
+
+	/**
+	 * restores the (transient) logger after deserialization
 	 */
-	public void purgeLog(TimestampMatrix ack) {
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		lsim = LSimFactory.getWorkerInstance();
 	}
 
 	/**
@@ -174,11 +280,8 @@ public class Log implements Serializable {
 	@Override
 	public synchronized String toString() {
 		String name = "";
-		for (Enumeration<List<Operation>> en = log.elements(); en.hasMoreElements();) {
-			List<Operation> sublog = en.nextElement();
-			for (ListIterator<Operation> en2 = sublog.listIterator(); en2.hasNext();) {
-				name += en2.next().toString() + "\n";
-			}
+		for (Enumeration<HostLog> en = log.elements(); en.hasMoreElements();) {
+			name += en.nextElement().toString();
 		}
 
 		return name;
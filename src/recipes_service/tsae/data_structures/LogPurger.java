@@ -0,0 +1,115 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package recipes_service.tsae.data_structures;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+//LSim logging system imports sgeag@2017
+import edu.uoc.dpcs.lsim.LSimFactory;
+import edu.uoc.dpcs.lsim.logger.LoggerManager.Level;
+import lsim.worker.LSimWorker;
+
+/**
+ * Purges the log in background each time the ack matrix is updated.
+ * 
+ * Requests are coalesced: while a purge is pending, new requests are
+ * ignored, because the pending purge will read the latest ack when it
+ * runs. This way TSAE sessions never purge inside their critical section.
+ *
+ */
+public class LogPurger {
+	// Needed for the logging system sgeag@2017
+	private LSimWorker lsim = LSimFactory.getWorkerInstance();
+
+	private final Log log;
+	private final TimestampMatrix ack;
+
+	private final ExecutorService executor;
+	private final AtomicBoolean pending = new AtomicBoolean(false);
+
+	// accumulated results
+	private final AtomicLong purgedOperations = new AtomicLong(0);
+	private final AtomicLong reclaimedBytes = new AtomicLong(0);
+
+	public LogPurger(Log log, TimestampMatrix ack) {
+		this.log = log;
+		this.ack = ack;
+		this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "TSAELogPurger");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * requests a purge of the log. Returns immediately.
+	 */
+	public void schedulePurge() {
+		if (!pending.compareAndSet(false, true)) {
+			return;
+		}
+		executor.execute(new Runnable() {
+			public void run() {
+				pending.set(false);
+				purge();
+			}
+		});
+	}
+
+	/**
+	 * purges the log using the current ack
+	 * @return result of this purge
+	 */
+	public PurgeResult purge() {
+		PurgeResult result = log.purgeLog(ack);
+		if (result.getPurgedOperations() > 0) {
+			purgedOperations.addAndGet(result.getPurgedOperations());
+			reclaimedBytes.addAndGet(result.getReclaimedBytes());
+			lsim.log(Level.TRACE, "[LogPurger] " + result + " (total purged: " + purgedOperations.get()
+					+ " operations, " + reclaimedBytes.get() + " bytes)");
+		}
+		return result;
+	}
+
+	public long getPurgedOperations() {
+		return purgedOperations.get();
+	}
+
+	public long getReclaimedBytes() {
+		return reclaimedBytes.get();
+	}
+
+	@Override
+	public String toString() {
+		return "LogPurger [purged operations=" + purgedOperations.get() + ", reclaimed bytes=" + reclaimedBytes.get()
+				+ "]";
+	}
+
+	public void shutdown() {
+		executor.shutdown();
+	}
+}
@@ -0,0 +1,110 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package recipes_service.tsae.data_structures;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps the ids of the participants (e.g. "localhost:9000") to dense
+ * indexes 0..n-1, so that per-participant data can be stored in arrays.
+ * 
+ * Registries are canonical: all the data structures built from the same
+ * list of participants share the same instance (also after
+ * deserialization), so they can be combined index by index.
+ *
+ */
+public final class ParticipantRegistry implements Serializable {
+
+	private static final long serialVersionUID = -6271468389913541406L;
+
+	private static final ConcurrentHashMap<List<String>, ParticipantRegistry> registries = new ConcurrentHashMap<List<String>, ParticipantRegistry>();
+
+	private final String[] ids;
+	private final transient HashMap<String, Integer> indexes;
+
+	private ParticipantRegistry(String[] ids) {
+		this.ids = ids;
+		this.indexes = new HashMap<String, Integer>();
+		for (int i = 0; i < ids.length; i++) {
+			indexes.put(ids[i], i);
+		}
+	}
+
+	/**
+	 * @param participants
+	 * @return the registry of participants
+	 */
+	public static ParticipantRegistry forParticipants(List<String> participants) {
+		List<String> key = new ArrayList<String>(participants);
+		ParticipantRegistry registry = registries.get(key);
+		if (registry == null) {
+			registries.putIfAbsent(key, new ParticipantRegistry(key.toArray(new String[key.size()])));
+			registry = registries.get(key);
+		}
+		return registry;
+	}
+
+	/**
+	 * @param id
+	 * @return index of participant id, or -1 if id is not a participant
+	 */
+	public int indexOf(String id) {
+		Integer index = indexes.get(id);
+		return (index == null) ? -1 : index;
+	}
+
+	/**
+	 * @param index
+	 * @return id of the participant with the given index
+	 */
+	public String getId(int index) {
+		return ids[index];
+	}
+
+	public int size() {
+		return ids.length;
+	}
+
+	/**
+	 * @return ids of the participants, ordered by index
+	 */
+	public List<String> getIds() {
+		return Arrays.asList(ids);
+	}
+
+	/**
+	 * deserialized registries are replaced by the canonical instance
+	 */
+	private Object readResolve() throws ObjectStreamException {
+		return forParticipants(Arrays.asList(ids));
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(ids);
+	}
+}
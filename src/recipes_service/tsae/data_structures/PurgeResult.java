@@ -0,0 +1,50 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package recipes_service.tsae.data_structures;
+
+/**
+ * Outcome of a purge of the log: number of operations removed and an
+ * estimation of the bytes reclaimed (encoded size of the removed
+ * operations, see BinaryCodec.encodedSize()).
+ *
+ */
+public class PurgeResult {
+	private final int purgedOperations;
+	private final long reclaimedBytes;
+
+	public PurgeResult(int purgedOperations, long reclaimedBytes) {
+		this.purgedOperations = purgedOperations;
+		this.reclaimedBytes = reclaimedBytes;
+	}
+
+	public int getPurgedOperations() {
+		return purgedOperations;
+	}
+
+	public long getReclaimedBytes() {
+		return reclaimedBytes;
+	}
+
+	@Override
+	public String toString() {
+		return "PurgeResult [purgedOperations=" + purgedOperations + ", reclaimedBytes=" + reclaimedBytes + "]";
+	}
+}
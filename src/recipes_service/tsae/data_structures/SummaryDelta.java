@@ -0,0 +1,189 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package recipes_service.tsae.data_structures;
+
+import java.io.Serializable;
+
+/**
+ * Entries of a summary (TimestampVector) and an ack (TimestampMatrix) that
+ * have changed with respect to a previous summary and ack (the baseline).
+ * 
+ * Summaries and acks only grow, so applying a delta with elementwise
+ * maximum over any older copy of the baseline never overestimates what
+ * the sender has seen: missing or stale entries only cause some operations
+ * to be sent again or the purge to be delayed.
+ *
+ */
+public class SummaryDelta implements Serializable {
+
+	private static final long serialVersionUID = 4937425021582366105L;
+
+	private String[] summaryHosts;
+	private long[] summarySeqs;
+
+	private String[] ackNodes;
+	private String[] ackHosts;
+	private long[] ackSeqs;
+
+	private SummaryDelta() {
+	}
+
+	/**
+	 * @param summaryHosts hosts of the changed summary entries
+	 * @param summarySeqs sequence numbers of the changed summary entries
+	 * @param ackNodes nodes (rows) of the changed ack entries
+	 * @param ackHosts hosts (columns) of the changed ack entries
+	 * @param ackSeqs sequence numbers of the changed ack entries
+	 */
+	public SummaryDelta(String[] summaryHosts, long[] summarySeqs, String[] ackNodes, String[] ackHosts,
+			long[] ackSeqs) {
+		this.summaryHosts = summaryHosts;
+		this.summarySeqs = summarySeqs;
+		this.ackNodes = ackNodes;
+		this.ackHosts = ackHosts;
+		this.ackSeqs = ackSeqs;
+	}
+
+	/**
+	 * @param baseSummary
+	 * @param baseAck
+	 * @param summary
+	 * @param ack
+	 * @return the entries of summary and ack that differ from baseSummary and
+	 *         baseAck, or null if they are built from different participants
+	 */
+	public static SummaryDelta between(TimestampVector baseSummary, TimestampMatrix baseAck, TimestampVector summary,
+			TimestampMatrix ack) {
+		ParticipantRegistry participants = summary.getParticipants();
+		if (baseSummary.getParticipants() != participants || baseAck.getParticipants() != participants
+				|| ack.getParticipants() != participants) {
+			return null;
+		}
+		int n = participants.size();
+
+		int changed = 0;
+		for (int j = 0; j < n; j++) {
+			if (summary.getLastSeq(j) != baseSummary.getLastSeq(j)) {
+				changed++;
+			}
+		}
+		SummaryDelta delta = new SummaryDelta();
+		delta.summaryHosts = new String[changed];
+		delta.summarySeqs = new long[changed];
+		int k = 0;
+		for (int j = 0; j < n; j++) {
+			long seq = summary.getLastSeq(j);
+			if (seq != baseSummary.getLastSeq(j)) {
+				delta.summaryHosts[k] = participants.getId(j);
+				delta.summarySeqs[k] = seq;
+				k++;
+			}
+		}
+
+		// matrices are copied to read each one consistently
+		TimestampMatrix ackCopy = ack.clone();
+		TimestampMatrix baseAckCopy = baseAck.clone();
+		changed = 0;
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				if (ackCopy.getLastSeq(i, j) != baseAckCopy.getLastSeq(i, j)) {
+					changed++;
+				}
+			}
+		}
+		delta.ackNodes = new String[changed];
+		delta.ackHosts = new String[changed];
+		delta.ackSeqs = new long[changed];
+		k = 0;
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				long seq = ackCopy.getLastSeq(i, j);
+				if (seq != baseAckCopy.getLastSeq(i, j)) {
+					delta.ackNodes[k] = participants.getId(i);
+					delta.ackHosts[k] = participants.getId(j);
+					delta.ackSeqs[k] = seq;
+					k++;
+				}
+			}
+		}
+		return delta;
+	}
+
+	/**
+	 * merges the entries of this delta into summary and ack (elementwise
+	 * maximum)
+	 * 
+	 * @param summary
+	 * @param ack
+	 */
+	public void applyTo(TimestampVector summary, TimestampMatrix ack) {
+		ParticipantRegistry participants = summary.getParticipants();
+		for (int k = 0; k < summaryHosts.length; k++) {
+			if (summary.getLastSeq(summaryHosts[k]) < summarySeqs[k]) {
+				summary.updateTimestamp(new Timestamp(summaryHosts[k], summarySeqs[k]));
+			}
+		}
+		participants = ack.getParticipants();
+		for (int k = 0; k < ackNodes.length; k++) {
+			int row = participants.indexOf(ackNodes[k]);
+			int col = participants.indexOf(ackHosts[k]);
+			if (row >= 0 && col >= 0) {
+				ack.updateMax(row, col, ackSeqs[k]);
+			}
+		}
+	}
+
+	public String[] getSummaryHosts() {
+		return summaryHosts;
+	}
+	public long[] getSummarySeqs() {
+		return summarySeqs;
+	}
+	public String[] getAckNodes() {
+		return ackNodes;
+	}
+	public String[] getAckHosts() {
+		return ackHosts;
+	}
+	public long[] getAckSeqs() {
+		return ackSeqs;
+	}
+
+	/**
+	 * @return number of entries in this delta
+	 */
+	public int size() {
+		return summaryHosts.length + ackNodes.length;
+	}
+
+	@Override
+	public String toString() {
+		String str = "summary={";
+		for (int k = 0; k < summaryHosts.length; k++) {
+			str += (k > 0 ? ", " : "") + summaryHosts[k] + "=" + summarySeqs[k];
+		}
+		str += "}, ack={";
+		for (int k = 0; k < ackNodes.length; k++) {
+			str += (k > 0 ? ", " : "") + ackNodes[k] + "/" + ackHosts[k] + "=" + ackSeqs[k];
+		}
+		return str + "}";
+	}
+}
@@ -20,11 +20,10 @@
 
 package recipes_service.tsae.data_structures;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.util.Enumeration;
 import java.util.List;
-import java.util.Iterator;
-import java.util.concurrent.ConcurrentHashMap;
 
 //LSim logging system imports sgeag@2017
 import edu.uoc.dpcs.lsim.LSimFactory;
@@ -41,24 +40,64 @@ public class TimestampMatrix implements Serializable{
 	private transient LSimWorker lsim = LSimFactory.getWorkerInstance();
 	
 	private static final long serialVersionUID = 3331148113387926667L;
-	ConcurrentHashMap<String, TimestampVector> timestampMatrix = new ConcurrentHashMap<String, TimestampVector>();
+
+	/**
+	 * timestampMatrix[i][j] is the sequence number of the last operation
+	 * issued by participant j that participant i is known to have received.
+	 * Participants are mapped to indexes by a ParticipantRegistry.
+	 * 
+	 * The minimum of each column (and how many rows hold it) is maintained
+	 * incrementally on every update, so minTimestampVector() is O(n). A
+	 * column is only rescanned when the last row holding its minimum grows.
+	 */
+	private final ParticipantRegistry participants;
+	private final long[][] timestampMatrix;
+	private final long[] columnMin;
+	private final int[] columnMinCount;
+
+	// incremented on every change; the digest is recomputed only when it
+	// has changed
+	private transient long version = 0;
+	private transient long digestVersion = -1;
+	private transient long digest = 0;
 	
 	public TimestampMatrix(List<String> participants){
+		this(ParticipantRegistry.forParticipants(participants));
+	}
+
+	private TimestampMatrix(ParticipantRegistry participants){
 		// create and empty TimestampMatrix
-		for (Iterator<String> it = participants.iterator(); it.hasNext(); ){
-			timestampMatrix.put(it.next(), new TimestampVector(participants));
+		int n = participants.size();
+		this.participants = participants;
+		this.timestampMatrix = new long[n][n];
+		this.columnMin = new long[n];
+		this.columnMinCount = new int[n];
+		for (int i = 0; i < n; i++){
+			for (int j = 0; j < n; j++){
+				timestampMatrix[i][j] = Timestamp.NULL_TIMESTAMP_SEQ_NUMBER;
+			}
+			columnMin[i] = Timestamp.NULL_TIMESTAMP_SEQ_NUMBER;
+			columnMinCount[i] = n;
 		}
 	}
 	
 	/**
 	 * Not private for testing purposes.
 	 * @param node
-	 * @return the timestamp vector of node in this timestamp matrix
+	 * @return a copy of the timestamp vector of node in this timestamp matrix
 	 */
-	TimestampVector getTimestampVector(String node){
-		
-		// return generated automatically. Remove it when implementing your solution 
-		return null;
+	synchronized TimestampVector getTimestampVector(String node){
+		if (node == null){
+			lsim.log(Level.ERROR, "Trying to retrieve the timestamp vector of a null node");
+			return null;
+		}
+		int row = participants.indexOf(node);
+		if (row < 0){
+			return null;
+		}
+		TimestampVector tsVector = new TimestampVector(participants);
+		tsVector.updateMax(timestampMatrix[row], participants);
+		return tsVector;
 	}
 	
 	/**
@@ -66,6 +105,32 @@ public class TimestampMatrix implements Serializable{
 	 * @param tsMatrix
 	 */
 	public void updateMax(TimestampMatrix tsMatrix){
+		if (tsMatrix == null || tsMatrix == this){
+			return;
+		}
+		// copy the other matrix to avoid holding both locks at the same time
+		long[][] other;
+		synchronized (tsMatrix){
+			other = new long[tsMatrix.timestampMatrix.length][];
+			for (int i = 0; i < other.length; i++){
+				other[i] = tsMatrix.timestampMatrix[i].clone();
+			}
+		}
+		ParticipantRegistry otherParticipants = tsMatrix.participants;
+		synchronized (this){
+			for (int i = 0; i < other.length; i++){
+				int row = (otherParticipants == participants) ? i : participants.indexOf(otherParticipants.getId(i));
+				if (row < 0){
+					continue;
+				}
+				for (int j = 0; j < other[i].length; j++){
+					int col = (otherParticipants == participants) ? j : participants.indexOf(otherParticipants.getId(j));
+					if (col >= 0 && other[i][j] > timestampMatrix[row][col]){
+						set(row, col, other[i][j]);
+					}
+				}
+			}
+		}
 	}
 	
 	/**
@@ -73,7 +138,24 @@ public class TimestampMatrix implements Serializable{
 	 * @param node
 	 * @param tsVector
 	 */
-	public void update(String node, TimestampVector tsVector){
+	public synchronized void update(String node, TimestampVector tsVector){
+		if (node == null || tsVector == null){
+			lsim.log(Level.ERROR, "Trying to update the timestamp matrix with a null node or vector");
+			return;
+		}
+		int row = participants.indexOf(node);
+		if (row < 0){
+			lsim.log(Level.ERROR, "Trying to update the timestamp matrix with an unknown node: " + node);
+			return;
+		}
+		ParticipantRegistry vectorParticipants = tsVector.getParticipants();
+		for (int j = 0; j < participants.size(); j++){
+			if (vectorParticipants == participants){
+				set(row, j, tsVector.getLastSeq(j));
+			} else {
+				set(row, j, tsVector.getLastSeq(participants.getId(j)));
+			}
+		}
 	}
 	
 	/**
@@ -81,19 +163,130 @@ public class TimestampMatrix implements Serializable{
 	 * @return a timestamp vector containing, for each node, 
 	 * the timestamp known by all participants
 	 */
-	public TimestampVector minTimestampVector(){
-		
-		// return generated automatically. Remove it when implementing your solution 
-		return null;
+	public synchronized TimestampVector minTimestampVector(){
+		// a new vector only has null timestamps, which are lower than any other
+		TimestampVector min = new TimestampVector(participants);
+		min.updateMax(columnMin, participants);
+		return min;
+	}
+
+	public ParticipantRegistry getParticipants(){
+		return participants;
+	}
+
+	/**
+	 * @param row index of a node
+	 * @param col index of a host
+	 * @return sequence number of the last operation of host known to be received by node
+	 */
+	public synchronized long getLastSeq(int row, int col){
+		return timestampMatrix[row][col];
+	}
+
+	/**
+	 * Estimates how many operations known by node fromRow have not been
+	 * received by node row.
+	 * @param row index of a node
+	 * @param fromRow index of another node
+	 * @return sum, for each host, of the sequence numbers known by fromRow
+	 * and not known by row
+	 */
+	public synchronized long missing(int row, int fromRow){
+		long missing = 0;
+		for (int j = 0; j < timestampMatrix.length; j++){
+			// null timestamps count as "no operation received" (-1)
+			long known = Math.max(timestampMatrix[fromRow][j], -1);
+			long received = Math.max(timestampMatrix[row][j], -1);
+			if (known > received){
+				missing += known - received;
+			}
+		}
+		return missing;
+	}
+
+	/**
+	 * updates an element of the matrix if seq is greater than the current one
+	 * @param row index of a node
+	 * @param col index of a host
+	 * @param seq
+	 */
+	synchronized void updateMax(int row, int col, long seq){
+		if (seq > timestampMatrix[row][col]){
+			set(row, col, seq);
+		}
+	}
+
+	/**
+	 * sets an element of the matrix keeping the column minimum up to date
+	 */
+	private void set(int row, int col, long value){
+		long old = timestampMatrix[row][col];
+		if (old == value){
+			return;
+		}
+		timestampMatrix[row][col] = value;
+		version++;
+		long min = columnMin[col];
+		if (value < min){
+			columnMin[col] = value;
+			columnMinCount[col] = 1;
+			return;
+		}
+		if (value == min){
+			columnMinCount[col]++;
+		}
+		if (old == min && --columnMinCount[col] == 0){
+			recomputeColumnMin(col);
+		}
+	}
+
+	private void recomputeColumnMin(int col){
+		long min = Long.MAX_VALUE;
+		int count = 0;
+		for (int i = 0; i < timestampMatrix.length; i++){
+			long value = timestampMatrix[i][col];
+			if (value < min){
+				min = value;
+				count = 1;
+			} else if (value == min){
+				count++;
+			}
+		}
+		columnMin[col] = min;
+		columnMinCount[col] = count;
 	}
 	
+	/**
+	 * 64-bit hash of the matrix, independent of the order of the
+	 * participants. It is cached until the matrix changes.
+	 * @return digest of the matrix
+	 */
+	public synchronized long digest(){
+		if (version != digestVersion){
+			long sum = 0;
+			for (int i = 0; i < timestampMatrix.length; i++){
+				long row = participants.getId(i).hashCode() * 31L;
+				for (int j = 0; j < timestampMatrix.length; j++){
+					sum += TimestampVector.mix((row + participants.getId(j).hashCode()) * 31L, timestampMatrix[i][j]);
+				}
+			}
+			digest = sum;
+			digestVersion = version;
+		}
+		return digest;
+	}
+
 	/**
 	 * clone
 	 */
-	public TimestampMatrix clone(){
-		
-		// return generated automatically. Remove it when implementing your solution 
-		return null;
+	public synchronized TimestampMatrix clone(){
+		TimestampMatrix clone = new TimestampMatrix(participants);
+		for (int i = 0; i < timestampMatrix.length; i++){
+			System.arraycopy(timestampMatrix[i], 0, clone.timestampMatrix[i], 0, timestampMatrix[i].length);
+		}
+		System.arraycopy(columnMin, 0, clone.columnMin, 0, columnMin.length);
+		System.arraycopy(columnMinCount, 0, clone.columnMinCount, 0, columnMinCount.length);
+		return clone;
 	}
 	
 	/**
@@ -101,9 +294,53 @@ public class TimestampMatrix implements Serializable{
 	 */
 	@Override
 	public boolean equals(Object obj) {
-		
-		// return generated automatically. Remove it when implementing your solution 
-		return false;
+		if (this == obj){
+			return true;
+		} else if (obj == null){
+			return false;
+		} else if (getClass() != obj.getClass()){
+			return false;
+		}
+		TimestampMatrix other = ((TimestampMatrix) obj).clone();
+		synchronized (this){
+			if (other.participants.size() != participants.size()){
+				return false;
+			}
+			for (int i = 0; i < timestampMatrix.length; i++){
+				int row = (other.participants == participants) ? i : other.participants.indexOf(participants.getId(i));
+				if (row < 0){
+					return false;
+				}
+				for (int j = 0; j < timestampMatrix.length; j++){
+					int col = (other.participants == participants) ? j : other.participants.indexOf(participants.getId(j));
+					if (col < 0 || other.timestampMatrix[row][col] != timestampMatrix[i][j]){
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+	}
+
+	@Override
+	public synchronized int hashCode() {
+		int hash = 0;
+		for (int i = 0; i < timestampMatrix.length; i++){
+			for (int j = 0; j < timestampMatrix.length; j++){
+				long seq = timestampMatrix[i][j];
+				hash += (participants.getId(i).hashCode() * 31 + participants.getId(j).hashCode()) ^ (int) (seq ^ (seq >>> 32));
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * restores the (transient) logger after deserialization
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		lsim = LSimFactory.getWorkerInstance();
+		digestVersion = -1;
 	}
 
 	
@@ -113,14 +350,11 @@ public class TimestampMatrix implements Serializable{
 	@Override
 	public synchronized String toString() {
 		String all="";
-		if(timestampMatrix==null){
-			return all;
-		}
-		for(Enumeration<String> en=timestampMatrix.keys(); en.hasMoreElements();){
-			String name=en.nextElement();
-			if(timestampMatrix.get(name)!=null)
-				all+=name+":   "+timestampMatrix.get(name)+"\n";
+		for (int i = 0; i < timestampMatrix.length; i++){
+			TimestampVector row = new TimestampVector(participants);
+			row.updateMax(timestampMatrix[i], participants);
+			all+=participants.getId(i)+":   "+row+"\n";
 		}
 		return all;
 	}
-}
\ No newline at end of file
+}
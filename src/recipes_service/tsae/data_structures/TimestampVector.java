@@ -20,20 +20,18 @@
 
 package recipes_service.tsae.data_structures;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.util.Enumeration;
-import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 //LSim logging system imports sgeag@2017
 import lsim.worker.LSimWorker;
 import edu.uoc.dpcs.lsim.LSimFactory;
 import edu.uoc.dpcs.lsim.logger.LoggerManager.Level;
 
-//Import ArrayList to clone
-import java.util.Vector;
-
 /**
  * @author Joan-Manuel Marques December 2012
  *
@@ -45,18 +43,37 @@ public class TimestampVector implements Serializable {
 	private static final long serialVersionUID = -765026247959198886L;
 	/**
 	 * This class stores a summary of the timestamps seen by a node. For each
-	 * node, stores the timestamp of the last received operation.
+	 * node, stores the sequence number of the last received operation.
+	 * 
+	 * Nodes are mapped to dense indexes by a ParticipantRegistry and sequence
+	 * numbers are stored in an AtomicLongArray, so merging, cloning and
+	 * comparing vectors are loops over primitive arrays that do not allocate.
+	 * The String-keyed methods (getLast, updateTimestamp) are kept as a facade.
 	 */
 
-	private ConcurrentHashMap<String, Timestamp> timestampVector = new ConcurrentHashMap<String, Timestamp>();
+	private final ParticipantRegistry participants;
+	private final AtomicLongArray timestampVector;
+
+	// incremented on every change; the digest is recomputed only when it
+	// has changed
+	private transient volatile long version = 0;
+	private transient long digestVersion = -1;
+	private transient long digest = 0;
+	private static final AtomicLongFieldUpdater<TimestampVector> VERSION =
+			AtomicLongFieldUpdater.newUpdater(TimestampVector.class, "version");
 
 	public TimestampVector(List<String> participants) {
+		this(ParticipantRegistry.forParticipants(participants));
+	}
+
+	TimestampVector(ParticipantRegistry participants) {
 		// create and empty TimestampVector
-		for (Iterator<String> it = participants.iterator(); it.hasNext();) {
-			String id = it.next();
+		this.participants = participants;
+		this.timestampVector = new AtomicLongArray(participants.size());
+		for (int i = 0; i < participants.size(); i++) {
 			// when sequence number of timestamp < 0 it means that the timestamp
 			// is the null timestamp
-			timestampVector.put(id, new Timestamp(id, Timestamp.NULL_TIMESTAMP_SEQ_NUMBER));
+			timestampVector.set(i, Timestamp.NULL_TIMESTAMP_SEQ_NUMBER);
 		}
 	}
 
@@ -66,14 +83,17 @@ public class TimestampVector implements Serializable {
 	 * @param timestamp
 	 */
 	public void updateTimestamp(Timestamp timestamp) {
-		lsim.log(Level.TRACE, "Updating the TimestampVectorInserting with the timestamp: " + timestamp);
-
 		if (timestamp == null) {
 			lsim.log(Level.ERROR, "Trying to update the vector with a null timestamp");
-		} else {
-			lsim.log(Level.DEBUG, "Timestamp updated for host: " + timestamp.getHostid());
-			this.timestampVector.put(timestamp.getHostid(), timestamp);
+			return;
 		}
+		int index = participants.indexOf(timestamp.getHostid());
+		if (index < 0) {
+			lsim.log(Level.ERROR, "Trying to update the vector with a timestamp of an unknown host: " + timestamp);
+			return;
+		}
+		timestampVector.set(index, timestamp.getSeqnumber());
+		VERSION.incrementAndGet(this);
 	}
 
 	/**
@@ -83,6 +103,37 @@ public class TimestampVector implements Serializable {
 	 *            (a timestamp vector)
 	 */
 	public void updateMax(TimestampVector tsVector) {
+		if (tsVector == null) {
+			return;
+		}
+		if (tsVector.participants == participants) {
+			for (int i = 0; i < timestampVector.length(); i++) {
+				max(i, tsVector.timestampVector.get(i));
+			}
+		} else {
+			for (int j = 0; j < tsVector.participants.size(); j++) {
+				int i = participants.indexOf(tsVector.participants.getId(j));
+				if (i >= 0) {
+					max(i, tsVector.timestampVector.get(j));
+				}
+			}
+		}
+	}
+
+	/**
+	 * merge in an array of sequence numbers (indexed by seqsParticipants),
+	 * taking the elementwise maximum
+	 * 
+	 * @param seqs
+	 * @param seqsParticipants
+	 */
+	void updateMax(long[] seqs, ParticipantRegistry seqsParticipants) {
+		for (int j = 0; j < seqs.length; j++) {
+			int i = (seqsParticipants == participants) ? j : participants.indexOf(seqsParticipants.getId(j));
+			if (i >= 0) {
+				max(i, seqs[j]);
+			}
+		}
 	}
 
 	/**
@@ -95,10 +146,39 @@ public class TimestampVector implements Serializable {
 		if (node == null) {
 			lsim.log(Level.ERROR, "Trying to retrieve the timestamp of a null node");
 			return null;
-		} else {
-			return this.timestampVector.get(node);
 		}
+		int index = participants.indexOf(node);
+		if (index < 0) {
+			return null;
+		}
+		return new Timestamp(node, timestampVector.get(index));
+	}
 
+	/**
+	 * @param node
+	 * @return the sequence number of the last operation issued by node that
+	 *         has been received (NULL_TIMESTAMP_SEQ_NUMBER if none or if node
+	 *         is unknown).
+	 */
+	public long getLastSeq(String node) {
+		int index = participants.indexOf(node);
+		if (index < 0) {
+			return Timestamp.NULL_TIMESTAMP_SEQ_NUMBER;
+		}
+		return timestampVector.get(index);
+	}
+
+	/**
+	 * @param index
+	 *            index of the node in the participant registry
+	 * @return the sequence number of the last operation issued by the node
+	 */
+	public long getLastSeq(int index) {
+		return timestampVector.get(index);
+	}
+
+	public ParticipantRegistry getParticipants() {
+		return participants;
 	}
 
 	/**
@@ -110,25 +190,89 @@ public class TimestampVector implements Serializable {
 	 *            (timestamp vector)
 	 */
 	public void mergeMin(TimestampVector tsVector) {
+		if (tsVector == null) {
+			return;
+		}
+		if (tsVector.participants == participants) {
+			for (int i = 0; i < timestampVector.length(); i++) {
+				min(i, tsVector.timestampVector.get(i));
+			}
+		} else {
+			for (int j = 0; j < tsVector.participants.size(); j++) {
+				int i = participants.indexOf(tsVector.participants.getId(j));
+				if (i >= 0) {
+					min(i, tsVector.timestampVector.get(j));
+				}
+			}
+		}
+	}
+
+	private void max(int index, long seq) {
+		long current;
+		while ((current = timestampVector.get(index)) < seq) {
+			if (timestampVector.compareAndSet(index, current, seq)) {
+				VERSION.incrementAndGet(this);
+				return;
+			}
+		}
+	}
+
+	private void min(int index, long seq) {
+		long current;
+		while ((current = timestampVector.get(index)) > seq) {
+			if (timestampVector.compareAndSet(index, current, seq)) {
+				VERSION.incrementAndGet(this);
+				return;
+			}
+		}
 	}
 
 	/**
-	 * clone
+	 * @return a counter that changes every time the vector changes
 	 */
-	public TimestampVector clone() {
+	public long getVersion() {
+		return version;
+	}
 
-		// Create a list of participants extracting it from this timestampVector
-		List<String> participants = new Vector<String>(this.timestampVector.keySet());
+	/**
+	 * 64-bit hash of the vector. It does not depend on the order of the
+	 * participants, so vectors with equal contents have the same digest in
+	 * every server. It is cached until the vector changes.
+	 * 
+	 * @return digest of the vector
+	 */
+	public synchronized long digest() {
+		long current = version;
+		if (current != digestVersion) {
+			long sum = 0;
+			for (int i = 0; i < timestampVector.length(); i++) {
+				sum += mix(participants.getId(i).hashCode(), timestampVector.get(i));
+			}
+			digest = sum;
+			digestVersion = current;
+		}
+		return digest;
+	}
 
-		// Call the TimestampVector constructor
-		TimestampVector clonedTsVctr = new TimestampVector(participants);
+	/**
+	 * hash of an element (key, seq) of a vector or a matrix (SplitMix64
+	 * finalizer)
+	 */
+	static long mix(long key, long seq) {
+		long z = key * 0x9E3779B97F4A7C15L + seq;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
 
-		// Participant list iterated and every timestamp is added to the cloned
-		// TimestampVector
-		for (String node : participants) {
-			clonedTsVctr.updateTimestamp(this.getLast(node));
+	/**
+	 * clone
+	 */
+	public TimestampVector clone() {
+		TimestampVector clonedTsVctr = new TimestampVector(participants);
+		for (int i = 0; i < timestampVector.length(); i++) {
+			clonedTsVctr.timestampVector.set(i, timestampVector.get(i));
 		}
-
 		return clonedTsVctr;
 	}
 
@@ -146,13 +290,36 @@ public class TimestampVector implements Serializable {
 			return false;
 		}
 
-		// Make a copy of obj, typecasting it as a TimestampVector and we use
-		// that to compare using the equals method
-		// of ConcurrentHashMap
-
 		TimestampVector other = (TimestampVector) obj;
+		if (other.participants.size() != participants.size()) {
+			return false;
+		}
+		for (int i = 0; i < timestampVector.length(); i++) {
+			int j = (other.participants == participants) ? i : other.participants.indexOf(participants.getId(i));
+			if (j < 0 || other.timestampVector.get(j) != timestampVector.get(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = 0;
+		for (int i = 0; i < timestampVector.length(); i++) {
+			long seq = timestampVector.get(i);
+			hash += participants.getId(i).hashCode() ^ (int) (seq ^ (seq >>> 32));
+		}
+		return hash;
+	}
 
-		return this.timestampVector.equals(other.timestampVector);
+	/**
+	 * restores the (transient) logger after deserialization
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		lsim = LSimFactory.getWorkerInstance();
+		digestVersion = -1;
 	}
 
 	/**
@@ -161,14 +328,9 @@ public class TimestampVector implements Serializable {
 	@Override
 	public synchronized String toString() {
 		String all = "";
-		if (timestampVector == null) {
-			return all;
-		}
-		for (Enumeration<String> en = timestampVector.keys(); en.hasMoreElements();) {
-			String name = en.nextElement();
-			if (timestampVector.get(name) != null)
-				all += timestampVector.get(name) + "\n";
+		for (int i = 0; i < timestampVector.length(); i++) {
+			all += new Timestamp(participants.getId(i), timestampVector.get(i)) + "\n";
 		}
 		return all;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,227 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package recipes_service.tsae.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A segment of the persistent log of a host: a memory-mapped file with
+ * capacity for several operations. Records are appended one after the
+ * other with the format
+ * 
+ *   [int length][long seqnumber][length bytes: serialized operation]
+ * 
+ * A length of 0 marks the end of the written records (the mapped file
+ * is zero-filled when it is created).
+ * 
+ * The segment keeps a sparse index (one entry every INDEX_INTERVAL
+ * records) that maps sequence numbers to offsets, so reading from a
+ * given sequence number does not need to scan the whole segment.
+ *
+ */
+class LogSegment {
+	static final String SUFFIX = ".seg";
+	static final int RECORD_HEADER = 4 + 8;
+	private static final int INDEX_INTERVAL = 32;
+
+	private final File file;
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+
+	// sequence number of the first record (also the name of the file)
+	private final long baseSeq;
+	private long lastSeq;
+	private int records = 0;
+	private int position = 0;
+
+	// sparse index
+	private long[] indexSeqs = new long[8];
+	private int[] indexOffsets = new int[8];
+	private int indexSize = 0;
+
+	private LogSegment(File file, long baseSeq, int capacity) throws IOException {
+		this.file = file;
+		this.baseSeq = baseSeq;
+		this.lastSeq = baseSeq - 1;
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		this.channel = raf.getChannel();
+		this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+	}
+
+	/**
+	 * creates a new (empty) segment whose first record will be baseSeq
+	 */
+	static LogSegment create(File dir, long baseSeq, int capacity) throws IOException {
+		return new LogSegment(new File(dir, fileName(baseSeq)), baseSeq, capacity);
+	}
+
+	/**
+	 * opens an existing segment. Only record headers are read to rebuild
+	 * the sparse index and to find the write position.
+	 */
+	static LogSegment open(File file) throws IOException {
+		String name = file.getName();
+		long baseSeq = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+		LogSegment segment = new LogSegment(file, baseSeq, (int) file.length());
+		segment.scan();
+		return segment;
+	}
+
+	static String fileName(long baseSeq) {
+		// fixed width so that files are listed in order
+		return String.format("%020d", baseSeq) + SUFFIX;
+	}
+
+	private void scan() {
+		int capacity = buffer.capacity();
+		int pos = 0;
+		while (pos + RECORD_HEADER <= capacity) {
+			int length = buffer.getInt(pos);
+			if (length <= 0 || pos + RECORD_HEADER + length > capacity) {
+				break;
+			}
+			indexRecord(buffer.getLong(pos + 4), pos);
+			pos += RECORD_HEADER + length;
+		}
+		position = pos;
+	}
+
+	/**
+	 * appends a record
+	 * @param seq
+	 * @param data
+	 * @return false if there is not enough room left in the segment
+	 */
+	synchronized boolean append(long seq, byte[] data) {
+		if (position + RECORD_HEADER + data.length > buffer.capacity()) {
+			return false;
+		}
+		ByteBuffer view = buffer.duplicate();
+		view.position(position + RECORD_HEADER);
+		view.put(data);
+		buffer.putLong(position + 4, seq);
+		// length is written last: a record is visible only once complete
+		buffer.putInt(position, data.length);
+		indexRecord(seq, position);
+		position += RECORD_HEADER + data.length;
+		return true;
+	}
+
+	private void indexRecord(long seq, int offset) {
+		if (records % INDEX_INTERVAL == 0) {
+			if (indexSize == indexSeqs.length) {
+				long[] newSeqs = new long[indexSize * 2];
+				int[] newOffsets = new int[indexSize * 2];
+				System.arraycopy(indexSeqs, 0, newSeqs, 0, indexSize);
+				System.arraycopy(indexOffsets, 0, newOffsets, 0, indexSize);
+				indexSeqs = newSeqs;
+				indexOffsets = newOffsets;
+			}
+			indexSeqs[indexSize] = seq;
+			indexOffsets[indexSize] = offset;
+			indexSize++;
+		}
+		records++;
+		lastSeq = seq;
+	}
+
+	/**
+	 * @param seq
+	 * @return serialized records with a sequence number greater than seq
+	 */
+	synchronized List<byte[]> readAfter(long seq) {
+		List<byte[]> result = new ArrayList<byte[]>();
+		if (seq >= lastSeq) {
+			return result;
+		}
+		// last index entry with a sequence number lower or equal than seq
+		int low = 0;
+		int high = indexSize - 1;
+		int start = 0;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (indexSeqs[mid] <= seq) {
+				start = indexOffsets[mid];
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		ByteBuffer view = buffer.duplicate();
+		int pos = start;
+		while (pos < position) {
+			int length = buffer.getInt(pos);
+			if (buffer.getLong(pos + 4) > seq) {
+				byte[] data = new byte[length];
+				view.position(pos + RECORD_HEADER);
+				view.get(data);
+				result.add(data);
+			}
+			pos += RECORD_HEADER + length;
+		}
+		return result;
+	}
+
+	long getBaseSeq() {
+		return baseSeq;
+	}
+
+	synchronized long getLastSeq() {
+		return lastSeq;
+	}
+
+	synchronized boolean isEmpty() {
+		return records == 0;
+	}
+
+	/**
+	 * @return size in bytes of the segment file
+	 */
+	int getCapacity() {
+		return buffer.capacity();
+	}
+
+	/**
+	 * flushes the written records to disk
+	 */
+	void force() {
+		buffer.force();
+	}
+
+	void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * closes and removes the segment file
+	 */
+	boolean delete() throws IOException {
+		close();
+		return file.delete();
+	}
+}
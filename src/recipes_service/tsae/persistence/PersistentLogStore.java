@@ -0,0 +1,374 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package recipes_service.tsae.persistence;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+//LSim logging system imports sgeag@2017
+import edu.uoc.dpcs.lsim.LSimFactory;
+import edu.uoc.dpcs.lsim.logger.LoggerManager.Level;
+import lsim.worker.LSimWorker;
+import recipes_service.data.Operation;
+import util.Serializer;
+
+/**
+ * Durable storage for the TSAE data structures of a Server.
+ * 
+ * The log is stored in a directory per host that contains append-only
+ * memory-mapped segments (see LogSegment). The rest of the state (summary,
+ * ack, recipes) is periodically checkpointed in a single file. When a
+ * Server restarts it reopens the segments (reading only record headers),
+ * loads the checkpoint and replays the operations logged after it.
+ * 
+ * Segments are deleted when the log is purged, but only once a checkpoint
+ * that includes the purged operations has been written.
+ *
+ */
+public class PersistentLogStore {
+	// Needed for the logging system sgeag@2017
+	private LSimWorker lsim = LSimFactory.getWorkerInstance();
+
+	private static final String STATE_FILE = "state.ckp";
+
+	private final File dir;
+	private final int segmentSize;
+
+	// segments of each host, ordered by sequence number
+	private final ConcurrentHashMap<String, List<LogSegment>> segments = new ConcurrentHashMap<String, List<LogSegment>>();
+
+	// purges waiting for a checkpoint: host -> purged sequence number
+	private final Map<String, Long> pendingPurges = new HashMap<String, Long>();
+
+	// checkpoints are written in background
+	private final ExecutorService executor;
+	private final AtomicBoolean checkpointPending = new AtomicBoolean(false);
+
+	// bytes of the purged segments deleted so far
+	private final AtomicLong reclaimedBytes = new AtomicLong(0);
+
+	/**
+	 * opens (or creates) the store in dir
+	 * @param dir
+	 * @param segmentSize size in bytes of each segment file
+	 * @throws IOException
+	 */
+	public PersistentLogStore(File dir, int segmentSize) throws IOException {
+		this.dir = dir;
+		this.segmentSize = segmentSize;
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Unable to create directory " + dir);
+		}
+		File[] hostDirs = dir.listFiles();
+		for (int i = 0; i < hostDirs.length; i++) {
+			if (hostDirs[i].isDirectory()) {
+				openHost(hostDirs[i]);
+			}
+		}
+		this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "TSAECheckpointer");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	private void openHost(File hostDir) throws IOException {
+		File[] files = hostDir.listFiles();
+		Arrays.sort(files);
+		List<LogSegment> hostSegments = new ArrayList<LogSegment>();
+		for (int i = 0; i < files.length; i++) {
+			if (files[i].getName().endsWith(LogSegment.SUFFIX)) {
+				hostSegments.add(LogSegment.open(files[i]));
+			}
+		}
+		segments.put(URLDecoder.decode(hostDir.getName(), "UTF-8"), hostSegments);
+	}
+
+	// ******************************
+	// *** log
+	// ******************************
+
+	/**
+	 * appends op to the segments of its host. Operations of a host have to be
+	 * appended in order.
+	 * @param op
+	 */
+	public void append(Operation op) {
+		String host = op.getTimestamp().getHostid();
+		long seq = op.getTimestamp().getSeqnumber();
+		try {
+			byte[] data = Serializer.serialize(op);
+			List<LogSegment> hostSegments = hostSegments(host);
+			synchronized (hostSegments) {
+				LogSegment last = hostSegments.isEmpty() ? null : hostSegments.get(hostSegments.size() - 1);
+				if (last == null || !last.append(seq, data)) {
+					last = LogSegment.create(hostDir(host), seq,
+							Math.max(segmentSize, LogSegment.RECORD_HEADER + data.length));
+					last.append(seq, data);
+					hostSegments.add(last);
+				}
+			}
+		} catch (IOException e) {
+			lsim.log(Level.ERROR, "[PersistentLogStore] unable to store operation " + op + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @param host
+	 * @param seq
+	 * @return operations of host with a sequence number greater than seq, in order
+	 */
+	public List<Operation> read(String host, long seq) {
+		List<Operation> ops = new ArrayList<Operation>();
+		List<LogSegment> hostSegments = segments.get(host);
+		if (hostSegments == null) {
+			return ops;
+		}
+		synchronized (hostSegments) {
+			for (LogSegment segment : hostSegments) {
+				if (segment.getLastSeq() <= seq) {
+					continue;
+				}
+				for (byte[] data : segment.readAfter(seq)) {
+					try {
+						ops.add((Operation) Serializer.deserialize(data));
+					} catch (IOException | ClassNotFoundException e) {
+						lsim.log(Level.ERROR, "[PersistentLogStore] corrupted record in " + host + ": " + e.getMessage());
+					}
+				}
+			}
+		}
+		return ops;
+	}
+
+	public Set<String> hosts() {
+		return segments.keySet();
+	}
+
+	/**
+	 * Marks the operations of host up to seq as purged. Their segments will
+	 * be deleted after the next checkpoint.
+	 * @param host
+	 * @param seq
+	 */
+	public void purgeUpTo(String host, long seq) {
+		synchronized (pendingPurges) {
+			Long pending = pendingPurges.get(host);
+			if (pending == null || pending < seq) {
+				pendingPurges.put(host, seq);
+			}
+		}
+	}
+
+	/**
+	 * @return bytes of the purged segments deleted so far
+	 */
+	public long getReclaimedBytes() {
+		return reclaimedBytes.get();
+	}
+
+	@Override
+	public String toString() {
+		return "PersistentLogStore [deleted segment bytes=" + reclaimedBytes.get() + "]";
+	}
+
+	// ******************************
+	// *** checkpoints
+	// ******************************
+
+	/**
+	 * Writes a checkpoint in background. Requests are coalesced: the state is
+	 * obtained from stateSource when the checkpoint is written.
+	 * @param stateSource
+	 */
+	public void scheduleCheckpoint(final Callable<ServerState> stateSource) {
+		if (!checkpointPending.compareAndSet(false, true)) {
+			return;
+		}
+		executor.execute(new Runnable() {
+			public void run() {
+				checkpointPending.set(false);
+				try {
+					checkpoint(stateSource.call());
+				} catch (Exception e) {
+					lsim.log(Level.ERROR, "[PersistentLogStore] checkpoint failed: " + e.getMessage());
+				}
+			}
+		});
+	}
+
+	/**
+	 * Writes a checkpoint: flushes segments, atomically replaces the state
+	 * file and deletes the segments purged up to the checkpointed summary.
+	 * @param state
+	 * @throws IOException
+	 */
+	public synchronized void checkpoint(ServerState state) throws IOException {
+		for (List<LogSegment> hostSegments : segments.values()) {
+			synchronized (hostSegments) {
+				for (LogSegment segment : hostSegments) {
+					segment.force();
+				}
+			}
+		}
+
+		File tmp = new File(dir, STATE_FILE + ".tmp");
+		FileOutputStream fos = new FileOutputStream(tmp);
+		try {
+			ObjectOutputStream out = new ObjectOutputStream(fos);
+			out.writeObject(state);
+			out.flush();
+			fos.getFD().sync();
+		} finally {
+			fos.close();
+		}
+		Files.move(tmp.toPath(), new File(dir, STATE_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+
+		deletePurgedSegments(state);
+	}
+
+	private void deletePurgedSegments(ServerState state) throws IOException {
+		Map<String, Long> purges;
+		synchronized (pendingPurges) {
+			purges = new HashMap<String, Long>(pendingPurges);
+		}
+		for (Map.Entry<String, Long> purge : purges.entrySet()) {
+			String host = purge.getKey();
+			long seq = purge.getValue();
+			// operations not included in the checkpoint cannot be deleted
+			if (state.getSummary() == null || state.getSummary().getLast(host) == null) {
+				continue;
+			}
+			seq = Math.min(seq, state.getSummary().getLast(host).getSeqnumber());
+			List<LogSegment> hostSegments = segments.get(host);
+			if (hostSegments == null) {
+				continue;
+			}
+			int deleted = 0;
+			long bytes = 0;
+			synchronized (hostSegments) {
+				// the last segment is kept: new operations are appended there
+				for (Iterator<LogSegment> it = hostSegments.iterator(); it.hasNext();) {
+					LogSegment segment = it.next();
+					if (segment.getLastSeq() <= seq && hostSegments.size() > 1) {
+						bytes += segment.getCapacity();
+						segment.delete();
+						it.remove();
+						deleted++;
+					}
+				}
+			}
+			if (deleted > 0) {
+				reclaimedBytes.addAndGet(bytes);
+				lsim.log(Level.DEBUG, "[PersistentLogStore] deleted " + deleted + " purged segments of " + host + " ("
+						+ bytes + " bytes)");
+			}
+		}
+	}
+
+	/**
+	 * @return the last checkpoint, or null if there is none
+	 */
+	public ServerState loadState() {
+		File file = new File(dir, STATE_FILE);
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			ObjectInputStream in = new ObjectInputStream(new FileInputStream(file));
+			try {
+				return (ServerState) in.readObject();
+			} finally {
+				in.close();
+			}
+		} catch (IOException | ClassNotFoundException e) {
+			lsim.log(Level.ERROR, "[PersistentLogStore] unable to load checkpoint: " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * writes a last checkpoint and closes the segments
+	 * @param state
+	 */
+	public void close(ServerState state) {
+		executor.shutdown();
+		try {
+			checkpoint(state);
+			for (List<LogSegment> hostSegments : segments.values()) {
+				synchronized (hostSegments) {
+					for (LogSegment segment : hostSegments) {
+						segment.close();
+					}
+				}
+			}
+		} catch (IOException e) {
+			lsim.log(Level.ERROR, "[PersistentLogStore] unable to close the store: " + e.getMessage());
+		}
+	}
+
+	// ******************************
+	// *** auxiliary methods
+	// ******************************
+
+	private List<LogSegment> hostSegments(String host) throws IOException {
+		List<LogSegment> hostSegments = segments.get(host);
+		if (hostSegments == null) {
+			File hostDir = hostDir(host);
+			if (!hostDir.isDirectory() && !hostDir.mkdirs()) {
+				throw new IOException("Unable to create directory " + hostDir);
+			}
+			segments.putIfAbsent(host, new ArrayList<LogSegment>());
+			hostSegments = segments.get(host);
+		}
+		return hostSegments;
+	}
+
+	private File hostDir(String host) throws UnsupportedEncodingException {
+		return new File(dir, URLEncoder.encode(host, "UTF-8"));
+	}
+}
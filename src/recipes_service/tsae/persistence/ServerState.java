@@ -0,0 +1,67 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package recipes_service.tsae.persistence;
+
+import java.io.Serializable;
+import java.util.List;
+
+import recipes_service.data.Recipes;
+import recipes_service.tsae.data_structures.Timestamp;
+import recipes_service.tsae.data_structures.TimestampMatrix;
+import recipes_service.tsae.data_structures.TimestampVector;
+
+/**
+ * Checkpoint of the state of a Server (everything but the log, that
+ * is stored in segments): summary, ack, recipes and tombstones.
+ *
+ */
+public class ServerState implements Serializable {
+
+	private static final long serialVersionUID = -3254977436102713025L;
+
+	private final TimestampVector summary;
+	private final TimestampMatrix ack;
+	private final Recipes recipes;
+	private final List<Timestamp> tombstones;
+
+	public ServerState(TimestampVector summary, TimestampMatrix ack, Recipes recipes, List<Timestamp> tombstones) {
+		this.summary = summary;
+		this.ack = ack;
+		this.recipes = recipes;
+		this.tombstones = tombstones;
+	}
+
+	public TimestampVector getSummary() {
+		return summary;
+	}
+
+	public TimestampMatrix getAck() {
+		return ack;
+	}
+
+	public Recipes getRecipes() {
+		return recipes;
+	}
+
+	public List<Timestamp> getTombstones() {
+		return tombstones;
+	}
+}
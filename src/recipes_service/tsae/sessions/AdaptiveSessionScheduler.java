@@ -0,0 +1,150 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package recipes_service.tsae.sessions;
+
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import recipes_service.ServerData;
+
+//LSim logging system imports sgeag@2017
+import lsim.worker.LSimWorker;
+import edu.uoc.dpcs.lsim.LSimFactory;
+import edu.uoc.dpcs.lsim.logger.LoggerManager.Level;
+
+/**
+ * Starts the periodic TSAE sessions of a server with a period that adapts
+ * to the divergence observed in the last round of sessions:
+ * 	- if they transferred at least a batch of operations (batchSize) the
+ * 	  period is halved (down to minPeriod)
+ * 	- if they transferred no operation the period is doubled (up to
+ * 	  maxPeriod)
+ * 	- otherwise the period does not change
+ * Each delay is randomized by +-JITTER so that servers do not start their
+ * sessions at the same time.
+ *
+ */
+public class AdaptiveSessionScheduler {
+	// Needed for the logging system sgeag@2017
+	private LSimWorker lsim = LSimFactory.getWorkerInstance();
+
+	private static final double JITTER = 0.2;
+
+	private final ServerData serverData;
+	private final long minPeriod;
+	private final long maxPeriod;
+	private final ScheduledExecutorService timer;
+	private final Random rnd = new Random();
+
+	private volatile long period;
+
+	private final Runnable roundTask = new Runnable() {
+		public void run() {
+			round();
+		}
+	};
+
+	/**
+	 * @param serverData
+	 * @param period initial period (milliseconds)
+	 * @param minPeriod minimum period (milliseconds)
+	 * @param maxPeriod maximum period (milliseconds)
+	 */
+	public AdaptiveSessionScheduler(ServerData serverData, long period, long minPeriod, long maxPeriod) {
+		this.serverData = serverData;
+		this.minPeriod = Math.max(1, minPeriod);
+		this.maxPeriod = Math.max(this.minPeriod, maxPeriod);
+		this.period = Math.min(this.maxPeriod, Math.max(this.minPeriod, period));
+		this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "TSAESessionScheduler");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * schedules the first round of sessions
+	 * @param delay (milliseconds)
+	 */
+	public void start(long delay) {
+		timer.schedule(roundTask, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return current period (milliseconds)
+	 */
+	public long getPeriod() {
+		return period;
+	}
+
+	/**
+	 * starts a round of sessions, waits for them to finish and schedules the
+	 * next one
+	 */
+	private void round() {
+		try {
+			FanOutResult fanOut = serverData.getTSAESessionOriginatorSide().sessionWithN(serverData.getNumberSessions());
+			// a session waits at most sessionTimeout for a slot and lasts at most sessionTimeout
+			fanOut.await(2 * serverData.getSessionTimeout());
+			if (fanOut.getSessions() > 0) {
+				adapt(fanOut.getOperationsReceived() + fanOut.getOperationsSent());
+			}
+		} catch (InterruptedException e) {
+			return;
+		} catch (RuntimeException e) {
+			lsim.log(Level.ERROR, "[AdaptiveSessionScheduler] " + e);
+		}
+		long delay = (long) (period * (1 + JITTER * (2 * rnd.nextDouble() - 1)));
+		try {
+			timer.schedule(roundTask, Math.max(1, delay), TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			// the scheduler has been shut down
+		}
+	}
+
+	/**
+	 * @param transferred number of operations transferred by the last round of sessions
+	 */
+	private void adapt(int transferred) {
+		long newPeriod = period;
+		if (transferred >= Math.max(1, serverData.getBatchSize())) {
+			newPeriod = Math.max(minPeriod, period / 2);
+		} else if (transferred == 0) {
+			newPeriod = Math.min(maxPeriod, period * 2);
+		}
+		if (newPeriod != period) {
+			lsim.log(Level.DEBUG, "[AdaptiveSessionScheduler] " + transferred + " operations transferred. Session period: "
+					+ period + " -> " + newPeriod + " ms");
+			period = newPeriod;
+		}
+	}
+
+	public void shutdown() {
+		timer.shutdownNow();
+	}
+}
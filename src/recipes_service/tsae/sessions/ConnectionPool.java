@@ -0,0 +1,215 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package recipes_service.tsae.sessions;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import recipes_service.activity_simulation.SimulationData;
+import recipes_service.communication.Host;
+
+/**
+ * Keeps the connections to partners open between TSAE sessions.
+ * 
+ * A connection is used by a single session at a time: acquire returns an
+ * idle connection to the partner (or opens a new one) and release gives it
+ * back when the session ends correctly. Connections of failed sessions are
+ * invalidated (closed). Idle connections are closed after idleTimeout
+ * milliseconds, and all of them are closed while the server is
+ * disconnected.
+ *
+ */
+public class ConnectionPool {
+	private static final int MAX_IDLE_PER_PARTNER = 2;
+
+	private final boolean enabled;
+	private final long idleTimeout;
+
+	private final Map<Host, ArrayDeque<PartnerConnection>> idle = new HashMap<Host, ArrayDeque<PartnerConnection>>();
+	private final ScheduledExecutorService evictor;
+
+	/**
+	 * @param enabled false to use a new connection for each session
+	 * @param idleTimeout maximum time (milliseconds) a connection stays idle
+	 */
+	public ConnectionPool(boolean enabled, long idleTimeout) {
+		this.enabled = enabled;
+		this.idleTimeout = idleTimeout;
+		this.evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "TSAEConnectionPool");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		if (enabled) {
+			long period = Math.max(100, idleTimeout / 2);
+			evictor.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					evictIdle();
+				}
+			}, period, period, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * @param partner
+	 * @param timeout connect timeout (milliseconds)
+	 * @return a connection to partner for the exclusive use of a session
+	 * @throws IOException
+	 */
+	public PartnerConnection acquire(Host partner, int timeout) throws IOException {
+		if (!SimulationData.getInstance().isConnected()) {
+			closeAll();
+			throw new IOException("Server disconnected");
+		}
+		PartnerConnection connection;
+		while ((connection = pollIdle(partner)) != null) {
+			if (connection.isHealthy()) {
+				return connection;
+			}
+			connection.close();
+		}
+		return connect(partner, timeout);
+	}
+
+	/**
+	 * @param partner
+	 * @param timeout connect timeout (milliseconds)
+	 * @return a new connection to partner (not taken from the pool)
+	 * @throws IOException
+	 */
+	public PartnerConnection connect(Host partner, int timeout) throws IOException {
+		return new PartnerConnection(partner, timeout);
+	}
+
+	/**
+	 * returns the connection of a session that ended correctly
+	 * @param connection
+	 */
+	public void release(PartnerConnection connection) {
+		try {
+			connection.sessionDone();
+		} catch (IOException e) {
+			connection.close();
+			return;
+		}
+		if (!enabled || !SimulationData.getInstance().isConnected()) {
+			connection.close();
+			return;
+		}
+		synchronized (idle) {
+			ArrayDeque<PartnerConnection> connections = idle.get(connection.getPartner());
+			if (connections == null) {
+				connections = new ArrayDeque<PartnerConnection>();
+				idle.put(connection.getPartner(), connections);
+			}
+			if (connections.size() < MAX_IDLE_PER_PARTNER) {
+				connections.push(connection);
+				return;
+			}
+		}
+		connection.close();
+	}
+
+	/**
+	 * closes the connection of a session that failed
+	 * @param connection
+	 */
+	public void invalidate(PartnerConnection connection) {
+		if (connection != null) {
+			connection.close();
+		}
+	}
+
+	/**
+	 * closes all idle connections and stops the eviction
+	 */
+	public void shutdown() {
+		evictor.shutdownNow();
+		closeAll();
+	}
+
+	/**
+	 * @return number of idle connections
+	 */
+	public int idleConnections() {
+		int n = 0;
+		synchronized (idle) {
+			for (ArrayDeque<PartnerConnection> connections : idle.values()) {
+				n += connections.size();
+			}
+		}
+		return n;
+	}
+
+	private PartnerConnection pollIdle(Host partner) {
+		synchronized (idle) {
+			ArrayDeque<PartnerConnection> connections = idle.get(partner);
+			return (connections == null ? null : connections.poll());
+		}
+	}
+
+	private void evictIdle() {
+		if (!SimulationData.getInstance().isConnected()) {
+			closeAll();
+			return;
+		}
+		long now = System.currentTimeMillis();
+		List<PartnerConnection> evicted = new ArrayList<PartnerConnection>();
+		synchronized (idle) {
+			for (ArrayDeque<PartnerConnection> connections : idle.values()) {
+				for (Iterator<PartnerConnection> it = connections.iterator(); it.hasNext();) {
+					PartnerConnection connection = it.next();
+					if (now - connection.getLastUsed() > idleTimeout || !connection.isHealthy()) {
+						it.remove();
+						evicted.add(connection);
+					}
+				}
+			}
+		}
+		for (PartnerConnection connection : evicted) {
+			connection.close();
+		}
+	}
+
+	private void closeAll() {
+		List<PartnerConnection> closed = new ArrayList<PartnerConnection>();
+		synchronized (idle) {
+			for (ArrayDeque<PartnerConnection> connections : idle.values()) {
+				closed.addAll(connections);
+			}
+			idle.clear();
+		}
+		for (PartnerConnection connection : closed) {
+			connection.close();
+		}
+	}
+}
@@ -0,0 +1,84 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package recipes_service.tsae.sessions;
+
+import recipes_service.ServerData;
+import recipes_service.communication.Host;
+import recipes_service.communication.Hosts;
+import recipes_service.tsae.data_structures.TimestampMatrix;
+
+/**
+ * Partners estimated to miss more operations first. The ack matrix of the
+ * local server tells, for each partner, the last operations it is known to
+ * have received; the partners whose row is further behind the local row are
+ * chosen (ties are broken at random). After a session the row of the partner
+ * catches up, so the next selection moves on to other partners.
+ *
+ */
+class DivergencePartnerSelector extends PartnerSelector {
+	private final ServerData serverData;
+	// row of each partner (and of the local server) in the ack matrix
+	private final int[] rows;
+	private final int localRow;
+	private final long[] scores;
+	private final int[] order;
+
+	DivergencePartnerSelector(Hosts participants, ServerData serverData) {
+		super(participants);
+		this.serverData = serverData;
+		TimestampMatrix ack = serverData.getAck();
+		rows = new int[partners.length];
+		for (int i = 0; i < partners.length; i++) {
+			rows[i] = ack.getParticipants().indexOf(partners[i].getId());
+		}
+		localRow = ack.getParticipants().indexOf(serverData.getId());
+		scores = new long[partners.length];
+		order = new int[partners.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+	}
+
+	@Override
+	public synchronized int select(int num, Host[] selected) {
+		num = maxPartners(num);
+		TimestampMatrix ack = serverData.getAck();
+		for (int i = 0; i < partners.length; i++) {
+			scores[i] = (rows[i] < 0 || localRow < 0) ? 0 : ack.missing(rows[i], localRow);
+		}
+		// random order to break ties, then selection of the num highest scores
+		for (int i = order.length - 1; i > 0; i--) {
+			swap(order, i, rnd.nextInt(i + 1));
+		}
+		for (int i = 0; i < num; i++) {
+			int best = i;
+			for (int j = i + 1; j < order.length; j++) {
+				if (scores[order[j]] > scores[order[best]]) {
+					best = j;
+				}
+			}
+			swap(order, i, best);
+			selected[i] = partners[order[i]];
+		}
+		return num;
+	}
+}
@@ -0,0 +1,117 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package recipes_service.tsae.sessions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Aggregated results of the TSAE sessions started by a call to
+ * TSAESessionOriginatorSide.sessionWithN. Sessions run concurrently; their
+ * results are added as they finish.
+ *
+ */
+public class FanOutResult {
+	private final int sessions;
+	private final CountDownLatch pending;
+	private final AtomicInteger remaining;
+	private final List<SessionResult> results = new Vector<SessionResult>();
+
+	FanOutResult(int sessions) {
+		this.sessions = sessions;
+		this.pending = new CountDownLatch(sessions);
+		this.remaining = new AtomicInteger(sessions);
+	}
+
+	/**
+	 * @param result
+	 * @return true if result is the last session to finish
+	 */
+	boolean add(SessionResult result) {
+		results.add(result);
+		pending.countDown();
+		return remaining.decrementAndGet() == 0;
+	}
+
+	/**
+	 * waits until all the sessions have finished
+	 * @param timeout maximum time to wait in milliseconds
+	 * @return true if all the sessions have finished
+	 * @throws InterruptedException
+	 */
+	public boolean await(long timeout) throws InterruptedException {
+		return pending.await(timeout, TimeUnit.MILLISECONDS);
+	}
+
+	public boolean isDone() {
+		return pending.getCount() == 0;
+	}
+
+	/**
+	 * @return number of sessions started
+	 */
+	public int getSessions() {
+		return sessions;
+	}
+
+	/**
+	 * @return results of the sessions finished so far, in order of completion
+	 */
+	public List<SessionResult> getResults() {
+		return new ArrayList<SessionResult>(results);
+	}
+
+	public int getCompleted() {
+		int completed = 0;
+		for (SessionResult result : getResults()) {
+			if (result.isCompleted()) {
+				completed++;
+			}
+		}
+		return completed;
+	}
+
+	public int getOperationsReceived() {
+		int ops = 0;
+		for (SessionResult result : getResults()) {
+			ops += result.getOperationsReceived();
+		}
+		return ops;
+	}
+
+	public int getOperationsSent() {
+		int ops = 0;
+		for (SessionResult result : getResults()) {
+			ops += result.getOperationsSent();
+		}
+		return ops;
+	}
+
+	@Override
+	public String toString() {
+		return "FanOutResult [sessions=" + sessions + ", finished=" + results.size() + ", completed=" + getCompleted()
+				+ ", received=" + getOperationsReceived() + ", sent=" + getOperationsSent() + "]";
+	}
+}
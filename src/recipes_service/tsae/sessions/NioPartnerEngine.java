@@ -0,0 +1,376 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package recipes_service.tsae.sessions;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import recipes_service.ServerData;
+import recipes_service.activity_simulation.SimulationData;
+import recipes_service.communication.BinaryCodec;
+import recipes_service.communication.Message;
+
+//LSim logging system imports sgeag@2017
+import lsim.worker.LSimWorker;
+import edu.uoc.dpcs.lsim.LSimFactory;
+import edu.uoc.dpcs.lsim.logger.LoggerManager.Level;
+
+/**
+ * Event-driven partner side of TSAE sessions: a single thread does the I/O
+ * of all the sessions from partner servers with a Selector and non-blocking
+ * SocketChannels, running a TSAEPartnerProtocol per connection.
+ * 
+ * The protocol (which executes operations, serializes snapshots or builds
+ * Merkle trees, holding the ServerData lock) runs in the SessionExecutor,
+ * one received message at a time per connection, so a slow session does
+ * not stall the others. Meanwhile the connection is neither read nor
+ * written. Its replies are then encoded one at a time, when the previous
+ * one has been written (see TSAEPartnerProtocol.onMessage), and the next
+ * message is read once all of them have been written.
+ * 
+ * Streams have to be in the binary format (see BinaryCodec), which is
+ * framed. At most maxConnections sessions are served at the same time
+ * (further connections wait in the accept backlog), each one buffering at
+ * most one incoming frame and one encoded outgoing frame. A connection can
+ * carry consecutive sessions (see ConnectionPool); it is closed when it
+ * stays idle.
+ *
+ */
+public class NioPartnerEngine {
+	// Needed for the logging system sgeag@2017
+	private LSimWorker lsim = LSimFactory.getWorkerInstance();
+
+	private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+	private static final long SELECT_TIMEOUT = 1000; // milliseconds
+
+	private final ServerSocketChannel serverChannel;
+	private final ServerData serverData;
+	private final int maxConnections;
+	private final long idleTimeout;
+
+	private Selector selector;
+	private int connections = 0;
+
+	// connections whose protocol has handled a message in the SessionExecutor
+	private final ConcurrentLinkedQueue<Connection> handled = new ConcurrentLinkedQueue<Connection>();
+
+	/**
+	 * @param serverChannel bound server channel
+	 * @param serverData
+	 * @param maxConnections maximum number of sessions served at the same time
+	 */
+	public NioPartnerEngine(ServerSocketChannel serverChannel, ServerData serverData, int maxConnections) {
+		this.serverChannel = serverChannel;
+		this.serverData = serverData;
+		this.maxConnections = Math.max(1, maxConnections);
+		// closes connections that the originator keeps idle
+		this.idleTimeout = 2 * serverData.getConnectionIdleTimeout();
+	}
+
+	/**
+	 * serves TSAE sessions until the server ends
+	 * @throws IOException
+	 */
+	public void run() throws IOException {
+		selector = Selector.open();
+		serverChannel.configureBlocking(false);
+		SelectionKey acceptKey = serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+		while (!serverData.end()) {
+			selector.select(SELECT_TIMEOUT);
+			boolean connected = SimulationData.getInstance().isConnected();
+			Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+			while (it.hasNext()) {
+				SelectionKey key = it.next();
+				it.remove();
+				if (!key.isValid()) {
+					continue;
+				}
+				if (key == acceptKey) {
+					accept(connected);
+					continue;
+				}
+				Connection connection = (Connection) key.attachment();
+				try {
+					if (!connected) {
+						throw new IOException("Server disconnected");
+					}
+					if (key.isReadable()) {
+						connection.read();
+					}
+					if (key.isValid() && key.isWritable()) {
+						connection.write();
+					}
+				} catch (ClassNotFoundException e) {
+					lsim.log(Level.ERROR, "[NioPartnerEngine] [session: " + connection.protocol.getSessionNumber() + "] "
+							+ e.getMessage());
+					close(connection);
+				} catch (IOException e) {
+					close(connection);
+				}
+			}
+			Connection connection;
+			while ((connection = handled.poll()) != null) {
+				if (connection.closed) {
+					continue;
+				}
+				try {
+					connection.handled();
+				} catch (ClassNotFoundException e) {
+					lsim.log(Level.ERROR, "[NioPartnerEngine] [session: " + connection.protocol.getSessionNumber() + "] "
+							+ e.getMessage());
+					close(connection);
+				} catch (IOException e) {
+					close(connection);
+				}
+			}
+			closeIdle(connected);
+			acceptKey.interestOps(connections < maxConnections ? SelectionKey.OP_ACCEPT : 0);
+		}
+
+		for (SelectionKey key : selector.keys()) {
+			if (key.attachment() instanceof Connection) {
+				close((Connection) key.attachment());
+			}
+		}
+		selector.close();
+	}
+
+	private void accept(boolean connected) throws IOException {
+		SocketChannel channel = serverChannel.accept();
+		if (channel == null) {
+			return;
+		}
+		if (!connected || connections >= maxConnections) {
+			channel.close();
+			return;
+		}
+		channel.configureBlocking(false);
+		Connection connection = new Connection(channel);
+		connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+		connections++;
+		try {
+			// the originator waits for the header of the stream before sending
+			connection.write();
+		} catch (ClassNotFoundException e) {
+			close(connection);
+		} catch (IOException e) {
+			close(connection);
+		}
+	}
+
+	/**
+	 * closes idle connections (all of them if the server is disconnected).
+	 * Connections whose protocol is handling a message are not idle.
+	 */
+	private void closeIdle(boolean connected) {
+		long now = System.currentTimeMillis();
+		List<Connection> idle = new ArrayList<Connection>();
+		for (SelectionKey key : selector.keys()) {
+			if (key.attachment() instanceof Connection) {
+				Connection connection = (Connection) key.attachment();
+				if (!connected || (!connection.busy && now - connection.lastActivity > idleTimeout)) {
+					idle.add(connection);
+				}
+			}
+		}
+		for (Connection connection : idle) {
+			close(connection);
+		}
+	}
+
+	private void close(Connection connection) {
+		if (connection.closed) {
+			return;
+		}
+		connection.closed = true;
+		connections--;
+		connection.key.cancel();
+		try {
+			connection.channel.close();
+		} catch (IOException e) {
+			// nothing to do
+		}
+	}
+
+	/**
+	 * state of a TSAE session from a partner
+	 */
+	private class Connection {
+		final SocketChannel channel;
+		SelectionKey key;
+		boolean closed = false;
+		long lastActivity = System.currentTimeMillis();
+
+		TSAEPartnerProtocol protocol = new TSAEPartnerProtocol(serverData);
+
+		// incoming frames
+		final BinaryCodec reader = new BinaryCodec();
+		ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+		boolean headerRead = false;
+
+		// outgoing frames (the stream starts with the header)
+		final BinaryCodec writer = new BinaryCodec();
+		Iterator<Message> replies = null;
+		ByteBuffer writeBuffer = ByteBuffer.wrap(new byte[] { (byte) BinaryCodec.MAGIC });
+
+		// true while the protocol handles a message in the SessionExecutor,
+		// which leaves its result in result (or failure)
+		boolean busy = false;
+		Iterator<Message> result;
+		RuntimeException failure;
+
+		Connection(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		void read() throws IOException, ClassNotFoundException {
+			if (channel.read(readBuffer) < 0) {
+				throw new IOException("Connection closed by the originator");
+			}
+			lastActivity = System.currentTimeMillis();
+			receive();
+		}
+
+		/**
+		 * passes the next frame to the protocol if it has been received completely
+		 */
+		void receive() throws IOException, ClassNotFoundException {
+			readBuffer.flip();
+			if (!headerRead && readBuffer.hasRemaining()) {
+				if ((readBuffer.get() & 0xFF) != BinaryCodec.MAGIC) {
+					throw new StreamCorruptedException("The originator does not use the binary format");
+				}
+				headerRead = true;
+			}
+			Message msg = null;
+			int needed = 0;
+			if (headerRead) {
+				int start = readBuffer.position();
+				int length = BinaryCodec.readFrameLength(readBuffer);
+				if (length >= 0 && readBuffer.remaining() < length) {
+					needed = readBuffer.position() - start + length;
+					readBuffer.position(start);
+				} else if (length >= 0) {
+					Object obj = reader.fromPayload(readBuffer.array(), readBuffer.arrayOffset() + readBuffer.position(),
+							length);
+					readBuffer.position(readBuffer.position() + length);
+					if (!(obj instanceof Message)) {
+						throw new StreamCorruptedException("Unexpected object: " + obj);
+					}
+					msg = (Message) obj;
+				}
+			}
+			readBuffer.compact();
+			if (needed > readBuffer.capacity()) {
+				// grows to hold the whole frame
+				ByteBuffer bigger = ByteBuffer.allocate(needed);
+				readBuffer.flip();
+				bigger.put(readBuffer);
+				readBuffer = bigger;
+			}
+			if (msg == null) {
+				key.interestOps(SelectionKey.OP_READ);
+			} else {
+				handle(msg);
+			}
+		}
+
+		/**
+		 * runs the protocol for msg in the SessionExecutor
+		 */
+		void handle(final Message msg) {
+			busy = true;
+			key.interestOps(0);
+			serverData.getSessionExecutor().execute(new Runnable() {
+				public void run() {
+					try {
+						result = protocol.onMessage(msg);
+					} catch (RuntimeException e) {
+						failure = e;
+					}
+					handled.add(Connection.this);
+					selector.wakeup();
+				}
+			});
+		}
+
+		/**
+		 * called by the selector thread once the protocol has handled a message
+		 */
+		void handled() throws IOException, ClassNotFoundException {
+			busy = false;
+			lastActivity = System.currentTimeMillis();
+			if (failure != null) {
+				lsim.log(Level.ERROR, "[NioPartnerEngine] [session: " + protocol.getSessionNumber() + "] " + failure);
+				close(this);
+				return;
+			}
+			replies = result;
+			result = null;
+			write();
+		}
+
+		void write() throws IOException, ClassNotFoundException {
+			if (busy) {
+				return;
+			}
+			while (true) {
+				if (writeBuffer == null) {
+					if (replies == null || !replies.hasNext()) {
+						break;
+					}
+					writeBuffer = ByteBuffer.wrap(writer.toFrame(replies.next()));
+				}
+				channel.write(writeBuffer);
+				if (writeBuffer.hasRemaining()) {
+					key.interestOps(SelectionKey.OP_WRITE);
+					return;
+				}
+				writeBuffer = null;
+				lastActivity = System.currentTimeMillis();
+			}
+			replies = null;
+			if (protocol.isDone()) {
+				lsim.log(Level.TRACE, "[TSAESessionPartnerSide] [session: " + protocol.getSessionNumber()
+						+ "] End TSAE session");
+				if (!protocol.isCompleted()) {
+					close(this);
+					return;
+				}
+				// the originator may reuse the connection for another session
+				// (it waits for the end of this one before starting it)
+				protocol = new TSAEPartnerProtocol(serverData);
+			}
+			// the next message may already be in the buffer
+			receive();
+		}
+	}
+}
@@ -0,0 +1,74 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package recipes_service.tsae.sessions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import recipes_service.ServerData;
+import recipes_service.data.Operation;
+
+/**
+ * Operations received in a TSAE session. They are executed together (see
+ * ServerData.execOperations) when the session has received all of them,
+ * or earlier when MAX_BUFFERED operations are waiting.
+ * Operations still buffered when a session fails are not executed: the
+ * partner will send them again in a later session.
+ *
+ */
+class OperationBuffer {
+	static final int MAX_BUFFERED = 4096;
+
+	private final ServerData serverData;
+	private final List<Operation> ops = new ArrayList<Operation>();
+
+	OperationBuffer(ServerData serverData) {
+		this.serverData = serverData;
+	}
+
+	void add(Operation op) {
+		ops.add(op);
+		if (ops.size() >= MAX_BUFFERED) {
+			flush();
+		}
+	}
+
+	void addAll(List<Operation> received) {
+		ops.addAll(received);
+		if (ops.size() >= MAX_BUFFERED) {
+			flush();
+		}
+	}
+
+	/**
+	 * executes the buffered operations
+	 * @return number of operations executed (not received before)
+	 */
+	int flush() {
+		if (ops.isEmpty()) {
+			return 0;
+		}
+		int executed = serverData.execOperations(ops);
+		ops.clear();
+		return executed;
+	}
+}
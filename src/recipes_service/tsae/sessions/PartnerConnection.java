@@ -0,0 +1,130 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package recipes_service.tsae.sessions;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+import communication.ObjectInputStream_DS;
+import communication.ObjectOutputStream_DS;
+import recipes_service.activity_simulation.SimulationData;
+import recipes_service.communication.Host;
+
+/**
+ * Connection to a partner (socket and streams) that can be reused by
+ * consecutive TSAE sessions (see ConnectionPool)
+ *
+ */
+public class PartnerConnection {
+	private final Host partner;
+	private final Socket socket;
+	private final ObjectInputStream_DS in;
+	private final ObjectOutputStream_DS out;
+
+	private int sessions = 0;
+	private long lastUsed = System.currentTimeMillis();
+
+	/**
+	 * connects to partner
+	 * @param partner
+	 * @param timeout connect timeout (milliseconds)
+	 * @throws IOException
+	 */
+	PartnerConnection(Host partner, int timeout) throws IOException {
+		this.partner = partner;
+		this.socket = new Socket();
+		try {
+			socket.connect(new InetSocketAddress(partner.getAddress(), partner.getPort()), timeout);
+			socket.setSoTimeout(timeout);
+			// the partner writes the header of its stream before reading. Its stream
+			// is compressed only if the partner has compression activated
+			this.in = new ObjectInputStream_DS(socket.getInputStream());
+			this.out = new ObjectOutputStream_DS(socket.getOutputStream(),
+					SimulationData.getInstance().compression() && in.isCompressed());
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+	}
+
+	public Host getPartner() {
+		return partner;
+	}
+	public Socket getSocket() {
+		return socket;
+	}
+	public ObjectInputStream_DS getInputStream() {
+		return in;
+	}
+	public ObjectOutputStream_DS getOutputStream() {
+		return out;
+	}
+
+	/**
+	 * @return true if a previous session has used this connection
+	 */
+	public boolean isReused() {
+		return sessions > 0;
+	}
+
+	/**
+	 * to be called when a session ends correctly
+	 * @throws IOException
+	 */
+	void sessionDone() throws IOException {
+		sessions++;
+		lastUsed = System.currentTimeMillis();
+		out.reset();
+	}
+
+	long getLastUsed() {
+		return lastUsed;
+	}
+
+	/**
+	 * A connection closed by the partner is not detected here (it can not be
+	 * known without reading): the session that uses it fails and is retried
+	 * with a new connection (see TSAESessionOriginatorSide).
+	 * 
+	 * @return false if the connection is closed or the partner has sent
+	 *         something outside a session that has not been read (by the
+	 *         socket or by the streams)
+	 */
+	boolean isHealthy() {
+		if (socket.isClosed() || !socket.isConnected() || socket.isInputShutdown() || socket.isOutputShutdown()) {
+			return false;
+		}
+		try {
+			return !in.hasUnreadData();
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	void close() {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// nothing to do
+		}
+	}
+}
@@ -0,0 +1,36 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package recipes_service.tsae.sessions;
+
+/**
+ * Strategy used to choose the partners of the TSAE sessions started by a
+ * server
+ *
+ */
+public enum PartnerSelection {
+	// random partners (uniform)
+	UNIFORM,
+	// partners estimated (from the ack matrix) to miss more operations first
+	DIVERGENCE,
+	// all partners in turn, in a random order fixed at start
+	ROUND_ROBIN
+}
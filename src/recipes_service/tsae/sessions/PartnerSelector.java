@@ -0,0 +1,86 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package recipes_service.tsae.sessions;
+
+import java.util.Random;
+
+import recipes_service.ServerData;
+import recipes_service.communication.Host;
+import recipes_service.communication.Hosts;
+
+/**
+ * Chooses the partners of the TSAE sessions started by a server (see
+ * PartnerSelection). The candidates are the participants but the local one,
+ * kept in an array built once at start, so choosing partners does not
+ * allocate.
+ *
+ */
+public abstract class PartnerSelector {
+	protected final Host[] partners;
+	protected final Random rnd = new Random();
+
+	protected PartnerSelector(Hosts participants) {
+		this.partners = participants.getPartners().clone();
+	}
+
+	/**
+	 * @param strategy
+	 * @param participants
+	 * @param serverData
+	 * @return a new PartnerSelector implementing strategy
+	 */
+	public static PartnerSelector create(PartnerSelection strategy, Hosts participants, ServerData serverData) {
+		switch (strategy) {
+		case DIVERGENCE:
+			return new DivergencePartnerSelector(participants, serverData);
+		case ROUND_ROBIN:
+			return new RoundRobinPartnerSelector(participants);
+		default:
+			return new UniformPartnerSelector(participants);
+		}
+	}
+
+	/**
+	 * @param num number of partners
+	 * @return maximum number of partners that can be selected
+	 */
+	public int maxPartners(int num) {
+		return Math.max(0, Math.min(num, partners.length));
+	}
+
+	/**
+	 * Chooses up to num different partners
+	 * @param num number of partners
+	 * @param selected array where the partners are stored (at least maxPartners(num) positions)
+	 * @return number of partners stored in selected
+	 */
+	public abstract int select(int num, Host[] selected);
+
+	/**
+	 * swaps two elements of an array
+	 */
+	protected static void swap(int[] array, int i, int j) {
+		int aux = array[i];
+		array[i] = array[j];
+		array[j] = aux;
+	}
+}
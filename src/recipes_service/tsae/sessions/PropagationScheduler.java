@@ -0,0 +1,135 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package recipes_service.tsae.sessions;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import recipes_service.ServerData;
+
+/**
+ * Coalesces the propagation of local writes: instead of starting
+ * propDegree TSAE sessions after each write, sessions are started once
+ * maxBatch writes are pending or maxDelay milliseconds after the first
+ * pending write, whichever comes first. Each round of sessions propagates
+ * all the writes done up to then.
+ * 
+ * maxDelay = 0 or maxBatch = 1 starts the sessions after every write.
+ *
+ */
+public class PropagationScheduler {
+
+	private final ServerData serverData;
+	private final long maxDelay;
+	private final int maxBatch;
+
+	private final ScheduledExecutorService timer;
+	private ScheduledFuture<?> scheduled = null;
+	private int pendingWrites = 0;
+
+	// statistics
+	private long writes = 0;
+	private long rounds = 0;
+
+	private final Runnable flushTask = new Runnable() {
+		public void run() {
+			flush();
+		}
+	};
+
+	/**
+	 * @param serverData
+	 * @param maxDelay maximum time (milliseconds) a write waits to be propagated
+	 * @param maxBatch maximum number of writes propagated by a round of sessions
+	 */
+	public PropagationScheduler(ServerData serverData, long maxDelay, int maxBatch) {
+		this.serverData = serverData;
+		this.maxDelay = maxDelay;
+		this.maxBatch = Math.max(1, maxBatch);
+		this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "TSAEPropagation");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * to be called after each local write
+	 */
+	public void writeCommitted() {
+		if (serverData.getPropagationDegree() <= 0) {
+			return;
+		}
+		boolean flushNow;
+		synchronized (this) {
+			writes++;
+			pendingWrites++;
+			flushNow = (pendingWrites >= maxBatch || maxDelay <= 0);
+			if (!flushNow && scheduled == null) {
+				scheduled = timer.schedule(flushTask, maxDelay, TimeUnit.MILLISECONDS);
+			}
+		}
+		if (flushNow) {
+			flush();
+		}
+	}
+
+	/**
+	 * starts a round of propagation sessions if there are pending writes
+	 */
+	public void flush() {
+		synchronized (this) {
+			if (pendingWrites == 0) {
+				return;
+			}
+			pendingWrites = 0;
+			rounds++;
+			if (scheduled != null) {
+				scheduled.cancel(false);
+				scheduled = null;
+			}
+		}
+		serverData.getTSAESessionOriginatorSide().sessionWithN(serverData.getPropagationDegree());
+	}
+
+	/**
+	 * @return number of local writes
+	 */
+	public synchronized long getWrites() {
+		return writes;
+	}
+
+	/**
+	 * @return number of rounds of propagation sessions started
+	 */
+	public synchronized long getRounds() {
+		return rounds;
+	}
+
+	public void shutdown() {
+		timer.shutdownNow();
+	}
+}
@@ -0,0 +1,57 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package recipes_service.tsae.sessions;
+
+import recipes_service.communication.Host;
+import recipes_service.communication.Hosts;
+
+/**
+ * All partners in turn, in a random order fixed at start (different in each
+ * server): each partner is chosen once every ceil(partners / num)
+ * consecutive selections
+ *
+ */
+class RoundRobinPartnerSelector extends PartnerSelector {
+	private final int[] order;
+	private int next = 0;
+
+	RoundRobinPartnerSelector(Hosts participants) {
+		super(participants);
+		order = new int[partners.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		for (int i = order.length - 1; i > 0; i--) {
+			swap(order, i, rnd.nextInt(i + 1));
+		}
+	}
+
+	@Override
+	public synchronized int select(int num, Host[] selected) {
+		num = maxPartners(num);
+		for (int i = 0; i < num; i++) {
+			selected[i] = partners[order[next]];
+			next = (next + 1) % order.length;
+		}
+		return num;
+	}
+}
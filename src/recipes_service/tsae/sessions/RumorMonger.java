@@ -0,0 +1,161 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package recipes_service.tsae.sessions;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import recipes_service.ServerData;
+import recipes_service.activity_simulation.SimulationData;
+import recipes_service.communication.Host;
+import recipes_service.communication.MessageRumor;
+import recipes_service.data.Operation;
+import recipes_service.tsae.data_structures.TimestampMatrix;
+
+//LSim logging system imports sgeag@2017
+import lsim.worker.LSimWorker;
+import edu.uoc.dpcs.lsim.LSimFactory;
+import edu.uoc.dpcs.lsim.logger.LoggerManager.Level;
+
+/**
+ * Rumor mongering: pushes each new local operation to fanout random
+ * partners as soon as it is created, without waiting for a TSAE session.
+ * A partner that receives an operation it did not have forwards it to
+ * fanout random partners with one hop less; an operation already received
+ * (or with a hop count of 1) is not forwarded, so rumors die out once most
+ * servers have them.
+ *
+ * Rumors are best effort: they are sent through the pooled connections
+ * (see ConnectionPool) with no answer, a partner parks the operations that
+ * arrive before the previous ones of their host (see HoldbackBuffer, so the
+ * summary never skips operations) and anything lost is delivered by the
+ * TSAE sessions. As rumors of
+ * consecutive operations reach each partner through different paths (or not
+ * at all), a rumor also carries the previous operations of the same host that
+ * the ack matrix does not show as received by the partner (at most
+ * MAX_RUN operations in total).
+ *
+ */
+public class RumorMonger {
+	// Needed for the logging system sgeag@2017
+	private LSimWorker lsim = LSimFactory.getWorkerInstance();
+
+	private static final int MAX_RUN = 16;
+
+	private final ServerData serverData;
+	private final int fanout;
+	private final int ttl;
+
+	/**
+	 * @param serverData
+	 * @param fanout number of partners a rumor is sent to (0: no rumors)
+	 * @param ttl maximum number of hops of a rumor
+	 */
+	public RumorMonger(ServerData serverData, int fanout, int ttl) {
+		this.serverData = serverData;
+		this.fanout = fanout;
+		this.ttl = ttl;
+	}
+
+	/**
+	 * pushes a new local operation to fanout partners
+	 * @param op
+	 */
+	public void spread(Operation op) {
+		forward(op, ttl);
+	}
+
+	/**
+	 * executes the operations of a rumor received from a partner and, if any
+	 * of them was new, forwards the rumor
+	 * @param msg
+	 */
+	public void receive(MessageRumor msg) {
+		List<Operation> run = msg.getOperations();
+		int executed = serverData.execOperations(run);
+		serverData.getTSAEMetrics().rumorReceived(executed > 0);
+		lsim.log(Level.TRACE, "[RumorMonger] received " + msg + " (" + executed + " operations executed)");
+		if (executed > 0) {
+			forward(run.get(run.size() - 1), msg.getTtl() - 1);
+		}
+	}
+
+	private void forward(Operation op, int ttl) {
+		if (fanout <= 0 || ttl <= 0 || !SimulationData.getInstance().isConnected()) {
+			return;
+		}
+		List<Host> partners = serverData.getRandomPartners(fanout);
+		for (int i = 0; i < partners.size(); i++) {
+			final Host partner = partners.get(i);
+			List<Operation> run = run(partner, op);
+			if (run.isEmpty()) {
+				continue;
+			}
+			final MessageRumor msg = new MessageRumor(run, ttl);
+			serverData.getSessionExecutor().execute(new Runnable() {
+				public void run() {
+					send(partner, msg);
+				}
+			});
+		}
+	}
+
+	/**
+	 * @param partner
+	 * @param op
+	 * @return operations of the host of op up to op (included) that partner
+	 *         is not known to have received (at most MAX_RUN), in order
+	 */
+	private List<Operation> run(Host partner, Operation op) {
+		String host = op.getTimestamp().getHostid();
+		long seq = op.getTimestamp().getSeqnumber();
+		TimestampMatrix ack = serverData.getAck();
+		int row = ack.getParticipants().indexOf(partner.getId());
+		int col = ack.getParticipants().indexOf(host);
+		long received = (row < 0 || col < 0) ? -1 : ack.getLastSeq(row, col);
+		List<Operation> newer = serverData.getLog().listNewer(host, Math.max(received, seq - MAX_RUN));
+		List<Operation> run = new ArrayList<Operation>(newer.size());
+		for (int i = 0; i < newer.size() && newer.get(i).getTimestamp().getSeqnumber() <= seq; i++) {
+			run.add(newer.get(i));
+		}
+		return run;
+	}
+
+	private void send(Host partner, MessageRumor msg) {
+		ConnectionPool pool = serverData.getConnectionPool();
+		PartnerConnection connection = null;
+		try {
+			connection = pool.acquire(partner, (int) serverData.getSessionTimeout());
+			connection.getOutputStream().writeObject(msg);
+			serverData.getTSAEMetrics().rumorSent();
+			lsim.log(Level.TRACE, "[RumorMonger] sent to " + partner + ": " + msg);
+			pool.release(connection);
+			connection = null;
+		} catch (IOException e) {
+			// lost: the operation will be received in a TSAE session
+			lsim.log(Level.DEBUG, "[RumorMonger] unable to send a rumor to " + partner + ": " + e.getMessage());
+		} finally {
+			pool.invalidate(connection);
+		}
+	}
+}
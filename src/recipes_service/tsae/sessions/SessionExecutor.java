@@ -0,0 +1,119 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package recipes_service.tsae.sessions;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//LSim logging system imports sgeag@2017
+import lsim.worker.LSimWorker;
+import edu.uoc.dpcs.lsim.LSimFactory;
+import edu.uoc.dpcs.lsim.logger.LoggerManager.Level;
+
+/**
+ * Runs TSAE sessions (originator and partner sides), each one in its own
+ * thread:
+ * 	- platform threads: a cached pool of daemon threads
+ * 	- virtual threads: a virtual thread per session, so that sessions
+ * 	  blocked in socket I/O do not tie up platform threads. Requires a JVM
+ * 	  with virtual threads (Java 21); otherwise platform threads are used.
+ *
+ */
+public class SessionExecutor {
+	// Needed for the logging system sgeag@2017
+	private static LSimWorker lsim = LSimFactory.getWorkerInstance();
+
+	private final ExecutorService executor;
+	private final boolean virtual;
+
+	private SessionExecutor(ExecutorService executor, boolean virtual) {
+		this.executor = executor;
+		this.virtual = virtual;
+	}
+
+	/**
+	 * @param virtualThreads true to run each session in a virtual thread
+	 * @return a new SessionExecutor
+	 */
+	public static SessionExecutor create(boolean virtualThreads) {
+		if (virtualThreads) {
+			ExecutorService executor = newVirtualThreadPerTaskExecutor();
+			if (executor != null) {
+				return new SessionExecutor(executor, true);
+			}
+			lsim.log(Level.WARN, "Virtual threads are not available in this JVM. TSAE sessions will use platform threads");
+		}
+		return new SessionExecutor(Executors.newCachedThreadPool(new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger(0);
+
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "TSAESession-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		}), false);
+	}
+
+	/**
+	 * Executors.newVirtualThreadPerTaskExecutor() is looked up by reflection
+	 * (the code is compiled for older Java versions)
+	 * 
+	 * @return the executor, or null if virtual threads are not available
+	 */
+	private static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * runs a session. Sessions submitted after shutdown are discarded.
+	 * @param session
+	 */
+	public void execute(Runnable session) {
+		try {
+			executor.execute(session);
+		} catch (RejectedExecutionException e) {
+			lsim.log(Level.TRACE, "[SessionExecutor] session discarded: executor is shut down");
+		}
+	}
+
+	/**
+	 * @return true if sessions run in virtual threads
+	 */
+	public boolean isVirtual() {
+		return virtual;
+	}
+
+	/**
+	 * stops accepting sessions (running sessions finish)
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+}
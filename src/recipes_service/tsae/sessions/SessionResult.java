@@ -0,0 +1,86 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package recipes_service.tsae.sessions;
+
+import recipes_service.communication.Host;
+
+/**
+ * Outcome of a TSAE session started by the originator side
+ *
+ */
+public class SessionResult {
+	private final Host partner;
+	private final int sessionNumber;
+	private final boolean completed;
+	private final int operationsReceived;
+	private final int operationsSent;
+	private final long duration;
+	private final String error;
+
+	/**
+	 * @param partner
+	 * @param sessionNumber
+	 * @param completed true if the session reached the END_TSAE exchange
+	 * @param operationsReceived number of operations received from the partner
+	 * @param operationsSent number of operations sent to the partner
+	 * @param duration duration in milliseconds
+	 * @param error reason of the failure (null if completed)
+	 */
+	public SessionResult(Host partner, int sessionNumber, boolean completed, int operationsReceived,
+			int operationsSent, long duration, String error) {
+		this.partner = partner;
+		this.sessionNumber = sessionNumber;
+		this.completed = completed;
+		this.operationsReceived = operationsReceived;
+		this.operationsSent = operationsSent;
+		this.duration = duration;
+		this.error = error;
+	}
+
+	public Host getPartner() {
+		return partner;
+	}
+	public int getSessionNumber() {
+		return sessionNumber;
+	}
+	public boolean isCompleted() {
+		return completed;
+	}
+	public int getOperationsReceived() {
+		return operationsReceived;
+	}
+	public int getOperationsSent() {
+		return operationsSent;
+	}
+	public long getDuration() {
+		return duration;
+	}
+	public String getError() {
+		return error;
+	}
+
+	@Override
+	public String toString() {
+		return "SessionResult [session: " + sessionNumber + ", partner=" + partner + ", completed=" + completed
+				+ ", received=" + operationsReceived + ", sent=" + operationsSent + ", duration=" + duration + "ms"
+				+ (error != null ? ", error=" + error : "") + "]";
+	}
+}
@@ -0,0 +1,220 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+package recipes_service.tsae.sessions;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import recipes_service.communication.MessageSnapshotChunk;
+import recipes_service.tsae.persistence.ServerState;
+
+/**
+ * Snapshot transfer: a consistent copy of the state of a server (recipes,
+ * tombstones, summary and ack; see ServerState) is serialized and sent in
+ * chunks of at most CHUNK_SIZE bytes, so the cost depends on the size of
+ * the state and not on the number of operations it is the result of.
+ * 
+ * The state is serialized directly into chunk-sized arrays, which are sent
+ * as they are and released once sent. The receiver collects the chunks
+ * with a SnapshotTransfer and, once complete, deserializes the state from
+ * a stream that reads the chunks in order, releasing each one when it has
+ * been read (see ServerData.installSnapshot). So neither side keeps a
+ * second copy of the serialized state.
+ *
+ */
+public class SnapshotTransfer {
+	public static final int CHUNK_SIZE = 64 * 1024;
+
+	private List<byte[]> received = new ArrayList<byte[]>();
+	private int size = 0;
+
+	/**
+	 * @param state
+	 * @return the serialized state, in chunks of CHUNK_SIZE bytes (the last
+	 *         one may be shorter)
+	 * @throws IOException
+	 */
+	public static List<byte[]> serialize(ServerState state) throws IOException {
+		ChunkOutputStream chunks = new ChunkOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(chunks);
+		out.writeObject(state);
+		out.close();
+		return chunks.chunks;
+	}
+
+	/**
+	 * Releases the chunk: each chunk can be sent only once.
+	 * 
+	 * @param chunks serialized state
+	 * @param index
+	 * @return message with the chunk index of chunks
+	 */
+	public static MessageSnapshotChunk chunk(List<byte[]> chunks, int index) {
+		return new MessageSnapshotChunk(index, chunks.size(), chunks.set(index, null));
+	}
+
+	/**
+	 * @param chunk next chunk of the snapshot
+	 * @return true if it was the last chunk
+	 * @throws StreamCorruptedException if the chunk is not the expected one
+	 */
+	public boolean add(MessageSnapshotChunk chunk) throws StreamCorruptedException {
+		if (chunk.getIndex() != received.size()) {
+			throw new StreamCorruptedException("Snapshot chunk " + chunk.getIndex() + " received, " + received.size() + " expected");
+		}
+		received.add(chunk.getData());
+		size += chunk.getData().length;
+		return received.size() == chunk.getCount();
+	}
+
+	/**
+	 * @return size in bytes of the chunks received
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Can be called only once: the chunks are released while they are read.
+	 * 
+	 * @return the state received (once all the chunks have been added)
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public ServerState getState() throws IOException, ClassNotFoundException {
+		ObjectInputStream in = new ObjectInputStream(new ChunkInputStream(received));
+		received = new ArrayList<byte[]>();
+		try {
+			return (ServerState) in.readObject();
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Fills arrays of CHUNK_SIZE bytes with the data written.
+	 */
+	private static class ChunkOutputStream extends OutputStream {
+		private final List<byte[]> chunks = new ArrayList<byte[]>();
+		private byte[] current = new byte[CHUNK_SIZE];
+		private int pos = 0;
+		private boolean closed = false;
+
+		@Override
+		public void write(int b) {
+			if (pos == CHUNK_SIZE) {
+				chunks.add(current);
+				current = new byte[CHUNK_SIZE];
+				pos = 0;
+			}
+			current[pos++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			while (len > 0) {
+				if (pos == CHUNK_SIZE) {
+					chunks.add(current);
+					current = new byte[CHUNK_SIZE];
+					pos = 0;
+				}
+				int n = Math.min(len, CHUNK_SIZE - pos);
+				System.arraycopy(b, off, current, pos, n);
+				pos += n;
+				off += n;
+				len -= n;
+			}
+		}
+
+		@Override
+		public void close() {
+			if (!closed) {
+				closed = true;
+				chunks.add((pos == CHUNK_SIZE) ? current : Arrays.copyOf(current, pos));
+				current = null;
+			}
+		}
+	}
+
+	/**
+	 * Reads the chunks in order, releasing each one once it has been read.
+	 */
+	private static class ChunkInputStream extends InputStream {
+		private final List<byte[]> chunks;
+		private int index = 0;
+		private int pos = 0;
+
+		ChunkInputStream(List<byte[]> chunks) {
+			this.chunks = chunks;
+		}
+
+		/**
+		 * @return the chunk being read, or null at the end of the data
+		 */
+		private byte[] current() {
+			while (index < chunks.size()) {
+				byte[] chunk = chunks.get(index);
+				if (pos < chunk.length) {
+					return chunk;
+				}
+				chunks.set(index++, null);
+				pos = 0;
+			}
+			return null;
+		}
+
+		@Override
+		public int read() {
+			byte[] chunk = current();
+			return (chunk == null) ? -1 : (chunk[pos++] & 0xff);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0) {
+				return 0;
+			}
+			byte[] chunk = current();
+			if (chunk == null) {
+				return -1;
+			}
+			int n = Math.min(len, chunk.length - pos);
+			System.arraycopy(chunk, pos, b, off, n);
+			pos += n;
+			return n;
+		}
+
+		@Override
+		public int available() {
+			byte[] chunk = current();
+			return (chunk == null) ? 0 : chunk.length - pos;
+		}
+	}
+}
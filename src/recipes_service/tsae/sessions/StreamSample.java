@@ -0,0 +1,63 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package recipes_service.tsae.sessions;
+
+import communication.ObjectInputStream_DS;
+import communication.ObjectOutputStream_DS;
+
+/**
+ * Statistics of the streams of a connection at the beginning of a TSAE
+ * session. record() adds to the metrics what the session has compressed
+ * (and decompressed) since then and the resets of the output stream.
+ *
+ */
+class StreamSample {
+	private final ObjectOutputStream_DS out;
+	private final ObjectInputStream_DS in;
+	private final long rawBytes;
+	private final long wireBytes;
+	private final long nanos;
+	private final long resets;
+
+	StreamSample(ObjectOutputStream_DS out, ObjectInputStream_DS in) {
+		this.out = out;
+		this.in = in;
+		this.rawBytes = out.getRawBytes();
+		this.wireBytes = out.getWireBytes();
+		this.nanos = nanos(out, in);
+		this.resets = out.getResets();
+	}
+
+	void record(TSAEMetrics metrics) {
+		if (out.isCompressed() || in.isCompressed()) {
+			metrics.compressedSession(out.getRawBytes() - rawBytes, out.getWireBytes() - wireBytes,
+					nanos(out, in) - nanos);
+		}
+		if (out.isStreaming()) {
+			metrics.streamSession(out.getResets() - resets, out.getPeakRetainedBytes());
+		}
+	}
+
+	private static long nanos(ObjectOutputStream_DS out, ObjectInputStream_DS in) {
+		return out.getCompressionNanos() + in.getDecompressionNanos();
+	}
+}
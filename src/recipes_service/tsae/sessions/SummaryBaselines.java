@@ -0,0 +1,183 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package recipes_service.tsae.sessions;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import recipes_service.communication.MessageAErequest;
+import recipes_service.tsae.data_structures.SummaryDelta;
+import recipes_service.tsae.data_structures.TimestampMatrix;
+import recipes_service.tsae.data_structures.TimestampVector;
+
+/**
+ * Keeps, for each partner, the last summary and ack exchanged in each
+ * direction, so that a MessageAErequest only carries the entries that
+ * changed since the last exchange with that partner.
+ * 
+ * Each summary and ack sent is identified by (incarnation, epoch). A delta
+ * is sent only when the partner has reported (in its own AE request) that it
+ * holds exactly the last summary and ack sent to it; otherwise the full
+ * summary and ack are sent. Summaries and acks only grow, so a receiver that
+ * rebuilds a delta over an older baseline (or over an empty one) only
+ * underestimates the sender's state: some operations are sent again or the
+ * purge is delayed, but nothing is lost. Such a rebuilt state is not kept as
+ * a baseline.
+ *
+ */
+public class SummaryBaselines {
+
+	private final String localId;
+	private final List<String> participants;
+	private final boolean enabled;
+
+	// identifies this execution: epochs are only meaningful within it
+	private final long incarnation = new Random().nextLong();
+	private final AtomicLong epochs = new AtomicLong(0);
+
+	private final ConcurrentHashMap<String, Baseline> baselines = new ConcurrentHashMap<String, Baseline>();
+
+	private static class Baseline {
+		// last summary and ack sent to the partner
+		long sentEpoch = -1;
+		TimestampVector sentSummary;
+		TimestampMatrix sentAck;
+
+		// epoch of the summary and ack of this server held by the partner
+		long ackedEpoch = -1;
+
+		// last summary and ack received (in full) from the partner
+		long heldIncarnation;
+		long heldEpoch = -1;
+		TimestampVector heldSummary;
+		TimestampMatrix heldAck;
+	}
+
+	/**
+	 * @param localId id of this server
+	 * @param participants ids of all servers
+	 * @param enabled false to always send the full summary and ack
+	 */
+	public SummaryBaselines(String localId, List<String> participants, boolean enabled) {
+		this.localId = localId;
+		this.participants = participants;
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Builds the AE request that sends summary and ack to a partner.
+	 * summary and ack must not be modified afterwards (they are kept as
+	 * baseline).
+	 * 
+	 * @param partnerId
+	 * @param summary
+	 * @param ack
+	 * @return a delta request if the partner holds the last summary and ack
+	 *         sent to it, a full request otherwise
+	 */
+	public MessageAErequest newRequest(String partnerId, TimestampVector summary, TimestampMatrix ack) {
+		if (partnerId == null) {
+			MessageAErequest msg = new MessageAErequest(summary, ack);
+			msg.setEpochs(localId, incarnation, epochs.incrementAndGet(), 0, -1);
+			return msg;
+		}
+		Baseline baseline = baseline(partnerId);
+		synchronized (baseline) {
+			MessageAErequest msg = null;
+			if (enabled && baseline.sentEpoch >= 0 && baseline.ackedEpoch == baseline.sentEpoch) {
+				SummaryDelta delta = SummaryDelta.between(baseline.sentSummary, baseline.sentAck, summary, ack);
+				if (delta != null) {
+					msg = new MessageAErequest(delta, baseline.sentEpoch);
+				}
+			}
+			if (msg == null) {
+				msg = new MessageAErequest(summary, ack);
+			}
+			long epoch = epochs.incrementAndGet();
+			msg.setEpochs(localId, incarnation, epoch, baseline.heldIncarnation, baseline.heldEpoch);
+			baseline.sentEpoch = epoch;
+			baseline.sentSummary = summary;
+			baseline.sentAck = ack;
+			return msg;
+		}
+	}
+
+	/**
+	 * Rebuilds the summary and ack of a received AE request (if it is a delta)
+	 * and records which of our summaries and acks the sender holds.
+	 * 
+	 * @param msg
+	 */
+	public void expand(MessageAErequest msg) {
+		if (msg.getSenderId() == null) {
+			return;
+		}
+		Baseline baseline = baseline(msg.getSenderId());
+		synchronized (baseline) {
+			baseline.ackedEpoch = (msg.getPeerIncarnation() == incarnation ? msg.getPeerEpoch() : -1);
+
+			boolean sameIncarnation = baseline.heldEpoch >= 0 && baseline.heldIncarnation == msg.getIncarnation();
+			boolean exact = true;
+			if (msg.isDelta()) {
+				TimestampVector summary;
+				TimestampMatrix ack;
+				if (sameIncarnation) {
+					summary = baseline.heldSummary.clone();
+					ack = baseline.heldAck.clone();
+				} else {
+					summary = new TimestampVector(participants);
+					ack = new TimestampMatrix(participants);
+				}
+				msg.getDelta().applyTo(summary, ack);
+				msg.expand(summary, ack);
+				exact = sameIncarnation && baseline.heldEpoch == msg.getBaseEpoch();
+			}
+
+			if (!sameIncarnation || msg.getEpoch() > baseline.heldEpoch) {
+				if (exact) {
+					baseline.heldIncarnation = msg.getIncarnation();
+					baseline.heldEpoch = msg.getEpoch();
+					baseline.heldSummary = msg.getSummary().clone();
+					baseline.heldAck = msg.getAck().clone();
+				} else {
+					// the sender will send the full summary and ack next time
+					baseline.heldEpoch = -1;
+					baseline.heldSummary = null;
+					baseline.heldAck = null;
+				}
+			}
+		}
+	}
+
+	private Baseline baseline(String partnerId) {
+		Baseline baseline = baselines.get(partnerId);
+		if (baseline == null) {
+			Baseline newBaseline = new Baseline();
+			baseline = baselines.putIfAbsent(partnerId, newBaseline);
+			if (baseline == null) {
+				baseline = newBaseline;
+			}
+		}
+		return baseline;
+	}
+}
@@ -0,0 +1,201 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package recipes_service.tsae.sessions;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the TSAE sessions of a server
+ *
+ */
+public class TSAEMetrics {
+	// sessions started by this server
+	private final AtomicLong originatorSessions = new AtomicLong();
+	// sessions started by this server that ended after the digest pre-check
+	private final AtomicLong originatorShortCircuited = new AtomicLong();
+	// sessions started by other servers
+	private final AtomicLong partnerSessions = new AtomicLong();
+	// sessions started by other servers that ended after the digest pre-check
+	private final AtomicLong partnerShortCircuited = new AtomicLong();
+	// rumors sent, received and received with an operation that was executed
+	private final AtomicLong rumorsSent = new AtomicLong();
+	private final AtomicLong rumorsReceived = new AtomicLong();
+	private final AtomicLong rumorsExecuted = new AtomicLong();
+	// snapshots sent and installed and bytes installed
+	private final AtomicLong snapshotsSent = new AtomicLong();
+	private final AtomicLong snapshotsInstalled = new AtomicLong();
+	private final AtomicLong snapshotBytes = new AtomicLong();
+	// Merkle reconciliations and recipes changed by them
+	private final AtomicLong merkleReconciliations = new AtomicLong();
+	private final AtomicLong merkleChanges = new AtomicLong();
+	// sessions with compressed streams, bytes they have written before and
+	// after compression and time spent compressing and decompressing
+	private final AtomicLong compressedSessions = new AtomicLong();
+	private final AtomicLong compressionRawBytes = new AtomicLong();
+	private final AtomicLong compressionWireBytes = new AtomicLong();
+	private final AtomicLong compressionNanos = new AtomicLong();
+	// resets of streams in streaming mode and maximum bytes written to one of
+	// them between two resets (estimation of the memory kept by a stream)
+	private final AtomicLong streamResets = new AtomicLong();
+	private final AtomicLong peakRetainedBytes = new AtomicLong();
+
+	public void originatorSession(boolean shortCircuited) {
+		originatorSessions.incrementAndGet();
+		if (shortCircuited) {
+			originatorShortCircuited.incrementAndGet();
+		}
+	}
+
+	public void partnerSession(boolean shortCircuited) {
+		partnerSessions.incrementAndGet();
+		if (shortCircuited) {
+			partnerShortCircuited.incrementAndGet();
+		}
+	}
+
+	public void rumorSent() {
+		rumorsSent.incrementAndGet();
+	}
+
+	public void rumorReceived(boolean executed) {
+		rumorsReceived.incrementAndGet();
+		if (executed) {
+			rumorsExecuted.incrementAndGet();
+		}
+	}
+
+	public void snapshotSent() {
+		snapshotsSent.incrementAndGet();
+	}
+
+	public void snapshotInstalled(int bytes) {
+		snapshotsInstalled.incrementAndGet();
+		snapshotBytes.addAndGet(bytes);
+	}
+
+	public void merkleReconciliation(int changes) {
+		merkleReconciliations.incrementAndGet();
+		merkleChanges.addAndGet(changes);
+	}
+
+	public void compressedSession(long rawBytes, long wireBytes, long nanos) {
+		compressedSessions.incrementAndGet();
+		compressionRawBytes.addAndGet(rawBytes);
+		compressionWireBytes.addAndGet(wireBytes);
+		compressionNanos.addAndGet(nanos);
+	}
+
+	public void streamSession(long resets, long retainedBytes) {
+		streamResets.addAndGet(resets);
+		long peak = peakRetainedBytes.get();
+		while (retainedBytes > peak && !peakRetainedBytes.compareAndSet(peak, retainedBytes)) {
+			peak = peakRetainedBytes.get();
+		}
+	}
+
+	public long getOriginatorSessions() {
+		return originatorSessions.get();
+	}
+	public long getOriginatorShortCircuited() {
+		return originatorShortCircuited.get();
+	}
+	public long getPartnerSessions() {
+		return partnerSessions.get();
+	}
+	public long getPartnerShortCircuited() {
+		return partnerShortCircuited.get();
+	}
+	public long getRumorsSent() {
+		return rumorsSent.get();
+	}
+	public long getRumorsReceived() {
+		return rumorsReceived.get();
+	}
+	public long getRumorsExecuted() {
+		return rumorsExecuted.get();
+	}
+	public long getSnapshotsSent() {
+		return snapshotsSent.get();
+	}
+	public long getSnapshotsInstalled() {
+		return snapshotsInstalled.get();
+	}
+	public long getSnapshotBytes() {
+		return snapshotBytes.get();
+	}
+	public long getMerkleReconciliations() {
+		return merkleReconciliations.get();
+	}
+	public long getMerkleChanges() {
+		return merkleChanges.get();
+	}
+
+	public long getCompressedSessions() {
+		return compressedSessions.get();
+	}
+	public long getCompressionRawBytes() {
+		return compressionRawBytes.get();
+	}
+	public long getCompressionWireBytes() {
+		return compressionWireBytes.get();
+	}
+	public long getCompressionNanos() {
+		return compressionNanos.get();
+	}
+
+	public long getStreamResets() {
+		return streamResets.get();
+	}
+	public long getPeakRetainedBytes() {
+		return peakRetainedBytes.get();
+	}
+
+	/**
+	 * @return bytes before compression / bytes after compression (1 if nothing has been compressed)
+	 */
+	public double getCompressionRatio() {
+		long wire = getCompressionWireBytes();
+		return (wire == 0) ? 1 : (double) getCompressionRawBytes() / wire;
+	}
+
+	/**
+	 * @return average time spent compressing and decompressing per session (microseconds)
+	 */
+	public long getCompressionMicrosPerSession() {
+		long sessions = getCompressedSessions();
+		return (sessions == 0) ? 0 : getCompressionNanos() / sessions / 1000;
+	}
+
+	@Override
+	public String toString() {
+		return "TSAEMetrics [originator sessions=" + getOriginatorSessions() + " (short-circuited: "
+				+ getOriginatorShortCircuited() + "), partner sessions=" + getPartnerSessions()
+				+ " (short-circuited: " + getPartnerShortCircuited() + "), rumors sent=" + getRumorsSent()
+				+ ", rumors received=" + getRumorsReceived() + " (executed: " + getRumorsExecuted()
+				+ "), snapshots sent=" + getSnapshotsSent() + ", snapshots installed=" + getSnapshotsInstalled()
+				+ " (" + getSnapshotBytes() + " bytes), Merkle reconciliations=" + getMerkleReconciliations()
+				+ " (recipes changed: " + getMerkleChanges() + "), compressed sessions=" + getCompressedSessions()
+				+ " (ratio: " + String.format("%.2f", getCompressionRatio()) + ", cpu per session: "
+				+ getCompressionMicrosPerSession() + " us), stream resets=" + getStreamResets()
+				+ " (peak bytes per stream: " + getPeakRetainedBytes() + ")]";
+	}
+}
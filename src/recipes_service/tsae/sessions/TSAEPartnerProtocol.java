@@ -0,0 +1,321 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package recipes_service.tsae.sessions;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import recipes_service.ServerData;
+import recipes_service.communication.Message;
+import recipes_service.communication.MessageAErequest;
+import recipes_service.communication.MessageEndTSAE;
+import recipes_service.communication.MessageMerkleBuckets;
+import recipes_service.communication.MessageMerkleHashes;
+import recipes_service.communication.MessageOperation;
+import recipes_service.communication.MessageOperationBatch;
+import recipes_service.communication.MessageRumor;
+import recipes_service.communication.MessageStateDigest;
+import recipes_service.communication.MsgType;
+import recipes_service.data.Operation;
+import recipes_service.data.RecipesMerkleTree;
+import recipes_service.tsae.persistence.ServerState;
+import recipes_service.tsae.data_structures.TimestampMatrix;
+import recipes_service.tsae.data_structures.TimestampVector;
+
+//LSim logging system imports sgeag@2017
+import lsim.worker.LSimWorker;
+import edu.uoc.dpcs.lsim.LSimFactory;
+import edu.uoc.dpcs.lsim.logger.LoggerManager.Level;
+
+/**
+ * Partner side of a TSAE session as a state machine without I/O: each
+ * received message is passed to onMessage, which returns the messages to
+ * send back. Used by the thread-per-session partner side
+ * (TSAESessionPartnerSide) and by the event-driven one (NioPartnerEngine).
+ *
+ * Session: receive originator's AE request, send operations (preceded by
+ * a snapshot of the state if the originator is too far behind) and local AE
+ * request, receive operations, receive END_TSAE and answer with END_TSAE.
+ * The AE request can be preceded by a digest of the originator's summary and
+ * ack: if it is equal to the local one the session ends answering END_TSAE,
+ * otherwise the local digest is sent back and the session goes on.
+ * Before END_TSAE the originator can start a Merkle reconciliation of the
+ * recipes (MERKLE_HASHES level by level, then MERKLE_BUCKETS in both
+ * directions) when the logs can not bring both servers up to date.
+ * Between sessions the connection can also carry rumors (see RumorMonger),
+ * which have no answer.
+ * A connection can carry consecutive sessions (see ConnectionPool), each
+ * one with a new TSAEPartnerProtocol.
+ *
+ */
+public class TSAEPartnerProtocol {
+	// Needed for the logging system sgeag@2017
+	private LSimWorker lsim = LSimFactory.getWorkerInstance();
+
+	private enum State {
+		AE_REQUEST, OPERATIONS, DONE
+	}
+
+	private final ServerData serverData;
+	private State state = State.AE_REQUEST;
+	private boolean completed = false;
+	private int current_session_number = -1;
+
+	private TimestampVector originatorSummary = null;
+	private TimestampMatrix originatorAck = null;
+
+	// snapshot of the recipes for a Merkle reconciliation
+	private RecipesMerkleTree merkleTree = null;
+
+	// operations received from the originator (executed together)
+	private final OperationBuffer received;
+
+	public TSAEPartnerProtocol(ServerData serverData) {
+		this.serverData = serverData;
+		this.received = new OperationBuffer(serverData);
+	}
+
+	/**
+	 * @param msg message received from the originator
+	 * @return messages to send to the originator, in order. They may be
+	 *         created while they are iterated (see AErequestReplies)
+	 */
+	public Iterator<Message> onMessage(Message msg) {
+		if (state == State.AE_REQUEST && msg.type() == MsgType.RUMOR) {
+			serverData.getRumorMonger().receive((MessageRumor) msg);
+			return Collections.emptyIterator();
+		}
+		if (state == State.AE_REQUEST && msg.getSessionNumber() != current_session_number) {
+			current_session_number = msg.getSessionNumber();
+			lsim.log(Level.TRACE, "[TSAESessionPartnerSide] [session: "+current_session_number+"] TSAE session");
+		}
+		lsim.log(Level.TRACE, "[TSAESessionPartnerSide] [session: "+current_session_number+"] received message: "+ msg);
+
+		switch (state) {
+		case AE_REQUEST:
+			if (msg.type() == MsgType.AE_REQUEST) {
+				state = State.OPERATIONS;
+				return receiveAErequest((MessageAErequest) msg);
+			} else if (msg.type() == MsgType.STATE_DIGEST) {
+				return receiveDigest((MessageStateDigest) msg);
+			}
+			break;
+		case OPERATIONS:
+			if (msg.type() == MsgType.OPERATION) {
+				received.add(((MessageOperation) msg).getOperation());
+				return Collections.emptyIterator();
+			} else if (msg.type() == MsgType.OPERATION_BATCH) {
+				received.addAll(((MessageOperationBatch) msg).getOperations());
+				return Collections.emptyIterator();
+			}
+			// the operations are executed before anything that reads the state
+			received.flush();
+			if (msg.type() == MsgType.MERKLE_HASHES) {
+				return receiveMerkleHashes((MessageMerkleHashes) msg);
+			} else if (msg.type() == MsgType.MERKLE_BUCKETS) {
+				MessageMerkleBuckets buckets = (MessageMerkleBuckets) msg;
+				int changes = serverData.mergeRecipes(buckets.getLeaves(), buckets.getRecipes(), originatorSummary);
+				serverData.getTSAEMetrics().merkleReconciliation(changes);
+				return Collections.emptyIterator();
+			} else if (msg.type() == MsgType.END_TSAE) {
+				state = State.DONE;
+				completed = true;
+				serverData.getTSAEMetrics().partnerSession(false);
+				return endSession();
+			}
+			break;
+		default:
+			break;
+		}
+		state = State.DONE;
+		return Collections.emptyIterator();
+	}
+
+	/**
+	 * @return true when the session is finished (the connection can be closed)
+	 */
+	public boolean isDone() {
+		return state == State.DONE;
+	}
+
+	/**
+	 * @return true if the session finished correctly (the connection can be
+	 *         reused by another session)
+	 */
+	public boolean isCompleted() {
+		return completed;
+	}
+
+	public int getSessionNumber() {
+		return current_session_number;
+	}
+
+	private Iterator<Message> receiveDigest(MessageStateDigest msg) {
+		long localDigest;
+		synchronized (serverData) {
+			serverData.getAck().update(serverData.getId(), serverData.getSummary());
+			localDigest = serverData.stateDigest();
+		}
+		if (localDigest == msg.getDigest()) {
+			// same summary and ack: nothing to exchange
+			state = State.DONE;
+			completed = true;
+			serverData.getTSAEMetrics().partnerSession(true);
+			return sent(Collections.<Message> singletonList(new MessageEndTSAE()));
+		}
+		return sent(Collections.<Message> singletonList(new MessageStateDigest(localDigest)));
+	}
+
+	/**
+	 * answers with the nodes whose hashes are different or, in the last level,
+	 * with the local recipes of the leaves that are different
+	 */
+	private Iterator<Message> receiveMerkleHashes(MessageMerkleHashes msg) {
+		if (merkleTree == null) {
+			merkleTree = new RecipesMerkleTree(serverData.getRecipes().toList());
+		}
+		int[] differing = merkleTree.diff(msg.getLevel(), msg.getNodes(), msg.getHashes());
+		Message reply;
+		if (msg.getLevel() < RecipesMerkleTree.DEPTH || differing.length == 0) {
+			reply = new MessageMerkleHashes(msg.getLevel(), differing, null);
+		} else {
+			reply = new MessageMerkleBuckets(differing, merkleTree.getRecipes(differing));
+		}
+		return sent(Collections.<Message> singletonList(reply));
+	}
+
+	private Iterator<Message> receiveAErequest(MessageAErequest msg) {
+		serverData.getSummaryBaselines().expand(msg);
+		String originatorId = msg.getSenderId();
+		originatorSummary = msg.getSummary();
+		originatorAck = msg.getAck();
+
+		// local's summary and ack are taken before listing the operations to
+		// send: the originator's summary will only cover operations it receives
+		TimestampVector localSummary = null;
+		TimestampMatrix localAck = null;
+		synchronized (serverData){
+			localSummary = serverData.getSummary().clone();
+			serverData.getAck().update(serverData.getId(), localSummary);
+			localAck = serverData.getAck().clone();
+		}
+
+		// send a snapshot of the state if the originator is too far behind
+		TimestampVector sentUpTo = originatorSummary;
+		List<byte[]> snapshot = null;
+		if (serverData.needsSnapshot(originatorSummary)) {
+			ServerState state = serverData.snapshotState();
+			try {
+				snapshot = SnapshotTransfer.serialize(state);
+				sentUpTo = state.getSummary();
+				serverData.getTSAEMetrics().snapshotSent();
+			} catch (IOException e) {
+				lsim.log(Level.ERROR, "[TSAESessionPartnerSide] [session: "+current_session_number+"] unable to serialize a snapshot: " + e.getMessage());
+			}
+		}
+
+		// send operations and, finally, local's summary and ack
+		return new AErequestReplies(snapshot, serverData.getLog().listNewer(sentUpTo),
+				serverData.getSummaryBaselines().newRequest(originatorId, localSummary, localAck));
+	}
+
+	/**
+	 * Replies to an AE request: the chunks of the snapshot (if any), the
+	 * operations in batches of batchSize and the AE request. Each message is
+	 * created when the previous one has been sent, so only the list of
+	 * operations (references to the ones in the log) and the chunks of the
+	 * snapshot not sent yet are kept, whatever the number of messages.
+	 */
+	private class AErequestReplies implements Iterator<Message> {
+		private final List<byte[]> snapshot;
+		private final int chunks;
+		private final List<Operation> ops;
+		private final int batchSize = Math.max(1, serverData.getBatchSize());
+		private Message request;
+		private int chunk = 0;
+		private int from = 0;
+
+		AErequestReplies(List<byte[]> snapshot, List<Operation> ops, Message request) {
+			this.snapshot = snapshot;
+			this.chunks = (snapshot == null) ? 0 : snapshot.size();
+			this.ops = ops;
+			this.request = request;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return chunk < chunks || from < ops.size() || request != null;
+		}
+
+		@Override
+		public Message next() {
+			if (chunk < chunks) {
+				return sent(SnapshotTransfer.chunk(snapshot, chunk++));
+			} else if (from < ops.size()) {
+				List<Operation> batch = ops.subList(from, Math.min(from + batchSize, ops.size()));
+				from += batch.size();
+				if (batch.size() == 1) {
+					return sent(new MessageOperation(batch.get(0)));
+				}
+				return sent(new MessageOperationBatch(new ArrayList<Operation>(batch)));
+			} else if (request != null) {
+				Message last = request;
+				request = null;
+				return sent(last);
+			}
+			throw new NoSuchElementException();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private Iterator<Message> endSession() {
+		// send and "end of TSAE session" message
+		Iterator<Message> replies = sent(Collections.<Message> singletonList(new MessageEndTSAE()));
+
+		synchronized (serverData){
+			serverData.getSummary().updateMax(originatorSummary);
+			serverData.getAck().updateMax(originatorAck);
+		}
+		serverData.ackUpdated();
+		return replies;
+	}
+
+	private Iterator<Message> sent(List<Message> replies) {
+		for (Message reply : replies) {
+			sent(reply);
+		}
+		return replies.iterator();
+	}
+
+	private Message sent(Message reply) {
+		reply.setSessionNumber(current_session_number);
+		lsim.log(Level.TRACE, "[TSAESessionPartnerSide] [session: "+current_session_number+"] sent message: "+ reply);
+		return reply;
+	}
+}
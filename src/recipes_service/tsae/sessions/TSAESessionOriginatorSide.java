@@ -22,10 +22,13 @@ package recipes_service.tsae.sessions;
 
 import java.io.IOException;
 import java.net.Socket;
-import java.util.Iterator;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.TimerTask;
 import java.util.Vector;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import recipes_service.ServerData;
@@ -34,9 +37,15 @@ import recipes_service.communication.Host;
 import recipes_service.communication.Message;
 import recipes_service.communication.MessageAErequest;
 import recipes_service.communication.MessageEndTSAE;
+import recipes_service.communication.MessageMerkleBuckets;
+import recipes_service.communication.MessageMerkleHashes;
 import recipes_service.communication.MessageOperation;
+import recipes_service.communication.MessageOperationBatch;
+import recipes_service.communication.MessageSnapshotChunk;
+import recipes_service.communication.MessageStateDigest;
 import recipes_service.communication.MsgType;
 import recipes_service.data.Operation;
+import recipes_service.data.RecipesMerkleTree;
 import recipes_service.tsae.data_structures.TimestampMatrix;
 import recipes_service.tsae.data_structures.TimestampVector;
 import communication.ObjectInputStream_DS;
@@ -58,9 +67,14 @@ public class TSAESessionOriginatorSide extends TimerTask{
 	private static AtomicInteger session_number = new AtomicInteger(0);
 	
 	private ServerData serverData;
+
+	// bounds the number of sessions started by this server running at the same time
+	private Semaphore parallelSessions;
+
 	public TSAESessionOriginatorSide(ServerData serverData){
 		super();
 		this.serverData=serverData;		
+		this.parallelSessions = new Semaphore(Math.max(1, serverData.getMaxParallelSessions()));
 	}
 	
 	/**
@@ -71,90 +85,337 @@ public class TSAESessionOriginatorSide extends TimerTask{
 	}
 
 	/**
-	 * This method performs num TSAE sessions
-	 * with num random servers
+	 * This method starts num TSAE sessions
+	 * with num servers chosen by the PartnerSelector
+	 * of the server. Sessions run
+	 * concurrently (see SessionExecutor), at most
+	 * maxParallelSessions at the same time, and each
+	 * one is aborted when its deadline (sessionTimeout) expires
 	 * @param num
+	 * @return results of the sessions (filled as they finish)
 	 */
-	public void sessionWithN(int num){
+	public FanOutResult sessionWithN(int num){
 		if(!SimulationData.getInstance().isConnected())
-			return;
-		List<Host> partnersTSAEsession= serverData.getRandomPartners(num);
-		Host n;
-		for(int i=0; i<partnersTSAEsession.size(); i++){
-			n=partnersTSAEsession.get(i);
-			sessionTSAE(n);
+			return new FanOutResult(0);
+		PartnerSelector selector = serverData.getPartnerSelector();
+		Host[] partnersTSAEsession = new Host[selector.maxPartners(num)];
+		int numPartners = selector.select(num, partnersTSAEsession);
+		final FanOutResult fanOut = new FanOutResult(numPartners);
+		for(int i=0; i<numPartners; i++){
+			final Host n=partnersTSAEsession[i];
+			serverData.getSessionExecutor().execute(new Runnable(){
+				public void run(){
+					SessionResult result = boundedSessionTSAE(n);
+					if (fanOut.add(result)){
+						lsim.log(Level.DEBUG, "[TSAESessionOriginatorSide] " + fanOut);
+					}
+				}
+			});
 		}
+		return fanOut;
 	}
-	
+
+	/**
+	 * waits for a free session slot (at most sessionTimeout) and performs
+	 * a TSAE session with the partner server n
+	 * @param n
+	 * @return result of the session
+	 */
+	private SessionResult boundedSessionTSAE(Host n){
+		long timeout = serverData.getSessionTimeout();
+		try {
+			if (!parallelSessions.tryAcquire(timeout, TimeUnit.MILLISECONDS)){
+				return new SessionResult(n, -1, false, 0, 0, timeout, "no free session slot");
+			}
+		} catch (InterruptedException e) {
+			return new SessionResult(n, -1, false, 0, 0, 0, "interrupted");
+		}
+		try {
+			return sessionTSAE(n);
+		} finally {
+			parallelSessions.release();
+		}
+	}
+
 	/**
 	 * This method perform a TSAE session
 	 * with the partner server n
 	 * @param n
+	 * @return result of the session
 	 */
-	private void sessionTSAE(Host n){
+	private SessionResult sessionTSAE(Host n){
 		int current_session_number = session_number.incrementAndGet();
-		if (n == null) return;
+		if (n == null) return new SessionResult(n, current_session_number, false, 0, 0, 0, "no partner");
 		
 		lsim.log(Level.TRACE, "[TSAESessionOriginatorSide] [session: "+current_session_number+"] TSAE session");
 
+		long start = System.currentTimeMillis();
+		long deadline = start + serverData.getSessionTimeout();
+		ConnectionPool pool = serverData.getConnectionPool();
+		SessionCounters counters = new SessionCounters();
+		boolean completed = false;
+		String error = null;
+		PartnerConnection connection = null;
 		try {
-			Socket socket = new Socket(n.getAddress(), n.getPort());
-			ObjectInputStream_DS in = new ObjectInputStream_DS(socket.getInputStream());
-			ObjectOutputStream_DS out = new ObjectOutputStream_DS(socket.getOutputStream());
-
-			TimestampVector localSummary = null;
-			TimestampMatrix localAck = null;
-			
-			// Send to partner: local's summary and ack
-			Message	msg = new MessageAErequest(localSummary, localAck);
+			connection = pool.acquire(n, remaining(deadline));
+			try {
+				completed = measuredExchange(connection, current_session_number, deadline, counters);
+			} catch (SocketTimeoutException e) {
+				throw e;
+			} catch (IOException e) {
+				if (!connection.isReused() || counters.messages > 0){
+					throw e;
+				}
+				// the partner has closed the pooled connection: retry with a new one
+				pool.invalidate(connection);
+				connection = null;
+				connection = pool.connect(n, remaining(deadline));
+				completed = measuredExchange(connection, current_session_number, deadline, counters);
+			}
+			if (completed){
+				serverData.getTSAEMetrics().originatorSession(counters.shortCircuited);
+				pool.release(connection);
+				connection = null;
+			}
+		} catch (ClassNotFoundException e) {
+			// TODO Auto-generated catch block
+			lsim.log(Level.FATAL, "[TSAESessionOriginatorSide] [session: "+current_session_number+"]" + e.getMessage());
+			e.printStackTrace();
+            System.exit(1);
+		} catch (SocketTimeoutException e) {
+			error = "deadline expired";
+		} catch (IOException e) {
+			error = e.getMessage();
+	    } finally {
+	    	pool.invalidate(connection);
+	    }
+		if (!completed && error == null){
+			error = "session not completed";
+		}
+
+		
+		lsim.log(Level.TRACE, "[TSAESessionOriginatorSide] [session: "+current_session_number+"] End TSAE session");
+		return new SessionResult(n, current_session_number, completed, counters.received, counters.sent,
+				System.currentTimeMillis() - start, error);
+	}
+
+	/**
+	 * exchange() adding the statistics of the streams of the session to the metrics
+	 */
+	private boolean measuredExchange(PartnerConnection connection, int current_session_number, long deadline,
+			SessionCounters counters) throws IOException, ClassNotFoundException{
+		StreamSample sample = new StreamSample(connection.getOutputStream(), connection.getInputStream());
+		boolean completed = exchange(connection, current_session_number, deadline, counters);
+		sample.record(serverData.getTSAEMetrics());
+		return completed;
+	}
+
+	/**
+	 * exchanges the messages of a TSAE session through connection
+	 * @return true if the session is completed
+	 */
+	private boolean exchange(PartnerConnection connection, int current_session_number, long deadline,
+			SessionCounters counters) throws IOException, ClassNotFoundException{
+		Socket socket = connection.getSocket();
+		ObjectInputStream_DS in = connection.getInputStream();
+		ObjectOutputStream_DS out = connection.getOutputStream();
+		Message	msg;
+
+		if (serverData.digestPrecheck()){
+			// send digest of local's summary and ack: the session ends if partner's one is equal
+			long localDigest;
+			synchronized (serverData){
+				serverData.getAck().update(serverData.getId(), serverData.getSummary());
+				localDigest = serverData.stateDigest();
+			}
+			msg = new MessageStateDigest(localDigest);
 			msg.setSessionNumber(current_session_number);
-            out.writeObject(msg);
+			out.writeObject(msg);
 			lsim.log(Level.TRACE, "[TSAESessionOriginatorSide] [session: "+current_session_number+"] sent message: "+msg);
+			msg = readMessage(in, socket, deadline);
+			counters.messages++;
+			lsim.log(Level.TRACE, "[TSAESessionOriginatorSide] [session: "+current_session_number+"] received message: "+msg);
+			if (msg.type() == MsgType.END_TSAE){
+				counters.shortCircuited = true;
+				return true;
+			} else if (msg.type() != MsgType.STATE_DIGEST){
+				return false;
+			}
+		}
 
-            // receive operations from partner
-			msg = (Message) in.readObject();
+		TimestampVector localSummary = null;
+		TimestampMatrix localAck = null;
+		synchronized (serverData){
+			localSummary = serverData.getSummary().clone();
+			serverData.getAck().update(serverData.getId(), localSummary);
+			localAck = serverData.getAck().clone();
+		}
+		
+		// Send to partner: local's summary and ack
+		msg = serverData.getSummaryBaselines().newRequest(connection.getPartner().getId(), localSummary, localAck);
+		msg.setSessionNumber(current_session_number);
+        out.writeObject(msg);
+		lsim.log(Level.TRACE, "[TSAESessionOriginatorSide] [session: "+current_session_number+"] sent message: "+msg);
+
+        // receive operations from partner
+		msg = readMessage(in, socket, deadline);
+		counters.messages++;
+		lsim.log(Level.TRACE, "[TSAESessionOriginatorSide] [session: "+current_session_number+"] received message: "+msg);
+		SnapshotTransfer snapshot = null;
+		OperationBuffer received = new OperationBuffer(serverData);
+		while (msg.type() == MsgType.OPERATION || msg.type() == MsgType.OPERATION_BATCH
+				|| msg.type() == MsgType.SNAPSHOT_CHUNK){
+			if (msg.type() == MsgType.SNAPSHOT_CHUNK){
+				// snapshot of partner's state: installed once all the chunks have been received
+				if (snapshot == null){
+					snapshot = new SnapshotTransfer();
+				}
+				if (snapshot.add((MessageSnapshotChunk) msg)){
+					received.flush();
+					serverData.installSnapshot(snapshot.getState());
+					serverData.getTSAEMetrics().snapshotInstalled(snapshot.size());
+				}
+			} else if (msg.type() == MsgType.OPERATION){
+				received.add(((MessageOperation) msg).getOperation());
+				counters.received++;
+			} else {
+				received.addAll(((MessageOperationBatch) msg).getOperations());
+				counters.received += ((MessageOperationBatch) msg).getOperations().size();
+			}
+			msg = readMessage(in, socket, deadline);
 			lsim.log(Level.TRACE, "[TSAESessionOriginatorSide] [session: "+current_session_number+"] received message: "+msg);
-			while (msg.type() == MsgType.OPERATION){
-				// ...
-				msg = (Message) in.readObject();
-				lsim.log(Level.TRACE, "[TSAESessionOriginatorSide] [session: "+current_session_number+"] received message: "+msg);
+		}
+		received.flush();
+
+        // receive partner's summary and ack
+		if (msg.type() != MsgType.AE_REQUEST){
+			return false;
+		}
+		serverData.getSummaryBaselines().expand((MessageAErequest) msg);
+		TimestampVector partnerSummary = ((MessageAErequest) msg).getSummary();
+		TimestampMatrix partnerAck = ((MessageAErequest) msg).getAck();
+		
+		// send operations
+		List<Operation> newerOps = serverData.getLog().listNewer(partnerSummary);
+		int batchSize = Math.max(1, serverData.getBatchSize());
+		for (int from = 0; from < newerOps.size(); from += batchSize){
+			List<Operation> batch = newerOps.subList(from, Math.min(from + batchSize, newerOps.size()));
+			if (batch.size() == 1){
+				msg = new MessageOperation(batch.get(0));
+			} else {
+				msg = new MessageOperationBatch(new ArrayList<Operation>(batch));
 			}
+			msg.setSessionNumber(current_session_number);
+			out.writeObject(msg);
+			counters.sent += batch.size();
+			lsim.log(Level.TRACE, "[TSAESessionOriginatorSide] [session: "+current_session_number+"] sent message: "+msg);
+		}
 
-            // receive partner's summary and ack
-			if (msg.type() == MsgType.AE_REQUEST){
-				// ...
-				
-				// send operations
-				
-				//...
-					msg.setSessionNumber(current_session_number);
-					out.writeObject(msg);
-					lsim.log(Level.TRACE, "[TSAESessionOriginatorSide] [session: "+current_session_number+"] sent message: "+msg);
-
-				// send and "end of TSAE session" message
-				msg = new MessageEndTSAE();  
+		// the logs can not bring both servers up to date: reconcile the recipes.
+		// Otherwise the session fails, because merging the summaries would cover
+		// operations that have not been received (and the parked ones would be
+		// discarded, see HoldbackBuffer)
+		if (serverData.hasGap(partnerSummary)){
+			if (!serverData.merkleReconciliation()){
+				lsim.log(Level.WARN, "[TSAESessionOriginatorSide] [session: "+current_session_number+"] some operations are no longer in the logs: summaries not merged (see merkleReconciliation)");
+				return false;
+			}
+			if (!reconcile(in, out, socket, deadline, current_session_number, partnerSummary)){
+				return false;
+			}
+		}
+
+		// send and "end of TSAE session" message
+		msg = new MessageEndTSAE();  
+		msg.setSessionNumber(current_session_number);
+        out.writeObject(msg);					
+		lsim.log(Level.TRACE, "[TSAESessionOriginatorSide] [session: "+current_session_number+"] sent message: "+msg);
+
+		// receive message to inform about the ending of the TSAE session
+		msg = readMessage(in, socket, deadline);
+		lsim.log(Level.TRACE, "[TSAESessionOriginatorSide] [session: "+current_session_number+"] received message: "+msg);
+		if (msg.type() != MsgType.END_TSAE){
+			return false;
+		}
+		synchronized (serverData){
+			serverData.getSummary().updateMax(partnerSummary);
+			serverData.getAck().updateMax(partnerAck);
+		}
+		serverData.ackUpdated();
+		return true;
+	}
+
+	/**
+	 * Merkle reconciliation of the recipes with the partner (see
+	 * RecipesMerkleTree): sends the hashes of the tree level by level,
+	 * descending only into the nodes the partner reports as different, and
+	 * finally exchanges the recipes of the differing leaves
+	 * @return true if the reconciliation finished correctly
+	 */
+	private boolean reconcile(ObjectInputStream_DS in, ObjectOutputStream_DS out, Socket socket, long deadline,
+			int current_session_number, TimestampVector partnerSummary) throws IOException, ClassNotFoundException{
+		RecipesMerkleTree tree = new RecipesMerkleTree(serverData.getRecipes().toList());
+		int level = 0;
+		int[] nodes = new int[] { 0 };
+		while (true){
+			Message msg = new MessageMerkleHashes(level, nodes, tree.getHashes(level, nodes));
+			msg.setSessionNumber(current_session_number);
+			out.writeObject(msg);
+			lsim.log(Level.TRACE, "[TSAESessionOriginatorSide] [session: "+current_session_number+"] sent message: "+msg);
+			msg = readMessage(in, socket, deadline);
+			lsim.log(Level.TRACE, "[TSAESessionOriginatorSide] [session: "+current_session_number+"] received message: "+msg);
+			if (msg.type() == MsgType.MERKLE_HASHES){
+				int[] differing = ((MessageMerkleHashes) msg).getNodes();
+				if (differing.length == 0){
+					return true;
+				}
+				nodes = RecipesMerkleTree.children(differing);
+				level++;
+			} else if (msg.type() == MsgType.MERKLE_BUCKETS){
+				MessageMerkleBuckets buckets = (MessageMerkleBuckets) msg;
+				// send the local recipes of the differing leaves (before merging)
+				msg = new MessageMerkleBuckets(buckets.getLeaves(), tree.getRecipes(buckets.getLeaves()));
 				msg.setSessionNumber(current_session_number);
-	            out.writeObject(msg);					
+				out.writeObject(msg);
 				lsim.log(Level.TRACE, "[TSAESessionOriginatorSide] [session: "+current_session_number+"] sent message: "+msg);
+				int changes = serverData.mergeRecipes(buckets.getLeaves(), buckets.getRecipes(), partnerSummary);
+				serverData.getTSAEMetrics().merkleReconciliation(changes);
+				return true;
+			} else {
+				return false;
+			}
+		}
+	}
 
-				// receive message to inform about the ending of the TSAE session
-				msg = (Message) in.readObject();
-				lsim.log(Level.TRACE, "[TSAESessionOriginatorSide] [session: "+current_session_number+"] received message: "+msg);
-				if (msg.type() == MsgType.END_TSAE){
-					// 
-				}
+	/**
+	 * operations and messages transferred by a session
+	 */
+	private static class SessionCounters {
+		int messages = 0;
+		boolean shortCircuited = false;
+		int received = 0;
+		int sent = 0;
+	}
 
-			}			
-			socket.close();
-		} catch (ClassNotFoundException e) {
-			// TODO Auto-generated catch block
-			lsim.log(Level.FATAL, "[TSAESessionOriginatorSide] [session: "+current_session_number+"]" + e.getMessage());
-			e.printStackTrace();
-            System.exit(1);
-		}catch (IOException e) {
-	    }
+	/**
+	 * reads the next message of the session before the deadline expires
+	 */
+	private Message readMessage(ObjectInputStream_DS in, Socket socket, long deadline)
+			throws IOException, ClassNotFoundException{
+		socket.setSoTimeout(remaining(deadline));
+		return (Message) in.readObject();
+	}
 
-		
-		lsim.log(Level.TRACE, "[TSAESessionOriginatorSide] [session: "+current_session_number+"] End TSAE session");
+	/**
+	 * @param deadline
+	 * @return milliseconds until deadline (a positive value: 0 means infinite timeout)
+	 * @throws SocketTimeoutException if the deadline has expired
+	 */
+	private static int remaining(long deadline) throws SocketTimeoutException{
+		long remaining = deadline - System.currentTimeMillis();
+		if (remaining <= 0){
+			throw new SocketTimeoutException("TSAE session deadline expired");
+		}
+		return (int) Math.min(remaining, Integer.MAX_VALUE);
 	}
-}
\ No newline at end of file
+}
@@ -24,20 +24,12 @@ package recipes_service.tsae.sessions;
 import java.io.IOException;
 import java.net.Socket;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Vector;
 
 import communication.ObjectInputStream_DS;
 import communication.ObjectOutputStream_DS;
 import recipes_service.ServerData;
 import recipes_service.communication.Message;
-import recipes_service.communication.MessageAErequest;
-import recipes_service.communication.MessageEndTSAE;
-import recipes_service.communication.MessageOperation;
-import recipes_service.communication.MsgType;
-import recipes_service.data.Operation;
-import recipes_service.tsae.data_structures.TimestampMatrix;
-import recipes_service.tsae.data_structures.TimestampVector;
 
 //LSim logging system imports sgeag@2017
 import lsim.worker.LSimWorker;
@@ -49,7 +41,7 @@ import edu.uoc.dpcs.lsim.logger.LoggerManager.Level;
  * December 2012
  *
  */
-public class TSAESessionPartnerSide extends Thread{
+public class TSAESessionPartnerSide implements Runnable{
 	// Needed for the logging system sgeag@2017
 	private LSimWorker lsim = LSimFactory.getWorkerInstance();
 	
@@ -57,71 +49,53 @@ public class TSAESessionPartnerSide extends Thread{
 	private ServerData serverData = null;
 	
 	public TSAESessionPartnerSide(Socket socket, ServerData serverData) {
-		super("TSAEPartnerSideThread");
 		this.socket = socket;
 		this.serverData = serverData;
 	}
 
+	/**
+	 * serves the TSAE sessions received through the connection
+	 * (consecutive sessions when the originator reuses it)
+	 */
 	public void run() {
 
 		Message msg = null;
 
-		int current_session_number = -1;
+		TSAEPartnerProtocol protocol = new TSAEPartnerProtocol(serverData);
 		try {
+			// closes the connection when the originator keeps it idle
+			socket.setSoTimeout((int) Math.min(2 * serverData.getConnectionIdleTimeout(), Integer.MAX_VALUE));
 			ObjectOutputStream_DS out = new ObjectOutputStream_DS(socket.getOutputStream());
 			ObjectInputStream_DS in = new ObjectInputStream_DS(socket.getInputStream());
 
-			// receive originator's summary and ack
-			msg = (Message) in.readObject();
-			current_session_number = msg.getSessionNumber();
-			lsim.log(Level.TRACE, "[TSAESessionPartnerSide] [session: "+current_session_number+"] TSAE session");
-			lsim.log(Level.TRACE, "[TSAESessionPartnerSide] [session: "+current_session_number+"] received message: "+ msg);
-			if (msg.type() == MsgType.AE_REQUEST){
-				// ...
-				
-	            // send operations
-					// ...
-					msg.setSessionNumber(current_session_number);
-					out.writeObject(msg);
-					lsim.log(Level.TRACE, "[TSAESessionPartnerSide] [session: "+current_session_number+"] sent message: "+ msg);
-
-		
-				// send to originator: local's summary and ack
-				TimestampVector localSummary = null;
-				TimestampMatrix localAck = null;
-				msg = new MessageAErequest(localSummary, localAck);
-				msg.setSessionNumber(current_session_number);
-	 	        out.writeObject(msg);
-				lsim.log(Level.TRACE, "[TSAESessionPartnerSide] [session: "+current_session_number+"] sent message: "+ msg);
-
-	            // receive operations
-				msg = (Message) in.readObject();
-				lsim.log(Level.TRACE, "[TSAESessionPartnerSide] [session: "+current_session_number+"] received message: "+ msg);
-				while (msg.type() == MsgType.OPERATION){
-					// ...
+			while (true){
+				StreamSample sample = new StreamSample(out, in);
+				while (!protocol.isDone()){
 					msg = (Message) in.readObject();
-					lsim.log(Level.TRACE, "[TSAESessionPartnerSide] [session: "+current_session_number+"] received message: "+ msg);
+					Iterator<Message> replies = protocol.onMessage(msg);
+					while (replies.hasNext()){
+						out.writeObject(replies.next());
+					}
 				}
-				
-				// receive message to inform about the ending of the TSAE session
-				if (msg.type() == MsgType.END_TSAE){
-					// send and "end of TSAE session" message
-					msg = new MessageEndTSAE();
-					msg.setSessionNumber(current_session_number);
-		            out.writeObject(msg);					
-					lsim.log(Level.TRACE, "[TSAESessionPartnerSide] [session: "+current_session_number+"] sent message: "+ msg);
+				lsim.log(Level.TRACE, "[TSAESessionPartnerSide] [session: "+protocol.getSessionNumber()+"] End TSAE session");
+				if (!protocol.isCompleted()){
+					break;
 				}
-				
+				sample.record(serverData.getTSAEMetrics());
+				out.reset();
+				protocol = new TSAEPartnerProtocol(serverData);
 			}
-			socket.close();		
 		} catch (ClassNotFoundException e) {
 			// TODO Auto-generated catch block
-			lsim.log(Level.FATAL, "[TSAESessionPartnerSide] [session: "+current_session_number+"]" + e.getMessage());
+			lsim.log(Level.FATAL, "[TSAESessionPartnerSide] [session: "+protocol.getSessionNumber()+"]" + e.getMessage());
 			e.printStackTrace();
             System.exit(1);
 		}catch (IOException e) {
+	    } finally {
+	    	try {
+				socket.close();
+			} catch (IOException e) {
+			}
 	    }
-		
-		lsim.log(Level.TRACE, "[TSAESessionPartnerSide] [session: "+current_session_number+"] End TSAE session");
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,52 @@
+/*
+* Copyright (c) Joan-Manuel Marques 2013. All rights reserved.
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+*
+* This file is part of the practical assignment of Distributed Systems course.
+*
+* This code is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This code is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this code.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package recipes_service.tsae.sessions;
+
+import recipes_service.communication.Host;
+import recipes_service.communication.Hosts;
+
+/**
+ * Random partners (uniform): partial Fisher-Yates shuffle of a permutation
+ * of the partners that is kept between calls
+ *
+ */
+class UniformPartnerSelector extends PartnerSelector {
+	private final int[] order;
+
+	UniformPartnerSelector(Hosts participants) {
+		super(participants);
+		order = new int[partners.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+	}
+
+	@Override
+	public synchronized int select(int num, Host[] selected) {
+		num = maxPartners(num);
+		for (int i = 0; i < num; i++) {
+			swap(order, i, i + rnd.nextInt(order.length - i));
+			selected[i] = partners[order[i]];
+		}
+		return num;
+	}
+}